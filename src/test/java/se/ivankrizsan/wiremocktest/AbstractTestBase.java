@@ -1,10 +1,24 @@
 package se.ivankrizsan.wiremocktest;
 
+import com.github.tomakehurst.wiremock.WireMockServer;
 import io.restassured.RestAssured;
+import io.restassured.config.SSLConfig;
+import io.restassured.filter.Filter;
 import io.restassured.response.Response;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.junit.Rule;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+
 /**
  * Abstract base-class for tests containing common constants and methods.
  *
@@ -32,13 +46,106 @@ public abstract class AbstractTestBase {
     protected static final String SERVER_KEYSTORE_PASSWORD = "secret";
     protected static final String SERVER_TRUSTSTORE_PATH = "client/server/server_cacerts.jks";
     protected static final String SERVER_TRUSTSTORE_PASSWORD = "secret";
+    /**
+     * REST Assured filter recording the time it takes to send each request and receive its
+     * response as the request execution phase of the current test. Includes the time of
+     * any TLS handshake.
+     */
+    protected static final Filter REQUEST_TIMING_FILTER = (inRequestSpec, inResponseSpec, inFilterContext) ->
+        TestPhaseTimings.timeAndGet(TestPhase.REQUEST_EXECUTION,
+            () -> inFilterContext.next(inRequestSpec, inResponseSpec));
+
+    /* Instance variable(s): */
+    /** Attributes phase timings to the current test and verifies phase thresholds. */
+    @Rule
+    public TestPhaseTimingRule mPhaseTimingRule = new TestPhaseTimingRule();
 
     /**
      * Initializes REST Assured for plain HTTP communication. To be called before each test.
+     * The execution of all requests sent using REST Assured is timed.
      */
     protected void initializeRestAssuredHttp() {
         RestAssured.reset();
         RestAssured.port = HTTP_ENDPOINT_PORT;
+        RestAssured.filters(REQUEST_TIMING_FILTER);
+    }
+
+    /**
+     * Starts the supplied WireMock server, timing the startup as the server startup phase
+     * of the current test.
+     *
+     * @param inWireMockServer WireMock server to start.
+     */
+    protected void startWireMockServer(final WireMockServer inWireMockServer) {
+        TestPhaseTimings.time(TestPhase.SERVER_STARTUP, inWireMockServer::start);
+    }
+
+    /**
+     * Stops the supplied WireMock server, timing the shutdown as the server shutdown phase
+     * of the current test.
+     *
+     * @param inWireMockServer WireMock server to stop.
+     */
+    protected void stopWireMockServer(final WireMockServer inWireMockServer) {
+        TestPhaseTimings.time(TestPhase.SERVER_SHUTDOWN, inWireMockServer::stop);
+    }
+
+    /**
+     * Loads the JKS keystore or truststore at the supplied path in the file system, timing
+     * the loading as the keystore loading phase of the current test.
+     *
+     * @param inKeystorePath Path of keystore.
+     * @param inKeystorePassword Password of keystore.
+     * @return Loaded keystore.
+     * @throws Exception If error occurs loading keystore.
+     */
+    protected KeyStore loadKeystore(final String inKeystorePath, final String inKeystorePassword)
+        throws Exception {
+        final KeyStore theKeystore = KeyStore.getInstance("JKS");
+        TestPhaseTimings.time(TestPhase.KEYSTORE_LOADING, () -> {
+            try (InputStream theKeystoreStream = new FileInputStream(inKeystorePath)) {
+                theKeystore.load(theKeystoreStream, inKeystorePassword.toCharArray());
+            }
+        });
+        return theKeystore;
+    }
+
+    /**
+     * Creates a REST Assured SSL configuration that, like relaxed HTTPS validation, trusts all
+     * server certificates and does not verify hostnames, uses the supplied client keystore
+     * and times the TLS handshakes of the current test.
+     *
+     * @param inKeystorePath Path of client keystore.
+     * @param inKeystorePassword Password of client keystore.
+     * @return SSL configuration.
+     * @throws Exception If error occurs loading the keystore or creating the SSL context.
+     */
+    @SuppressWarnings("deprecation")
+    protected SSLConfig createRelaxedTimingSSLConfig(final String inKeystorePath, final String inKeystorePassword)
+        throws Exception {
+        final KeyManagerFactory theKeyManagerFactory =
+            KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        theKeyManagerFactory.init(
+            loadKeystore(inKeystorePath, inKeystorePassword), inKeystorePassword.toCharArray());
+        final TrustManager theTrustAllManager = new X509TrustManager() {
+            @Override
+            public void checkClientTrusted(final X509Certificate[] inChain, final String inAuthType) {
+            }
+
+            @Override
+            public void checkServerTrusted(final X509Certificate[] inChain, final String inAuthType) {
+            }
+
+            @Override
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+        };
+        final SSLContext theSSLContext = SSLContext.getInstance("TLS");
+        theSSLContext.init(theKeyManagerFactory.getKeyManagers(), new TrustManager[] {theTrustAllManager}, null);
+
+        return new SSLConfig().sslSocketFactory(
+            new TimingSSLSocketFactory(theSSLContext, SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER));
     }
 
     /**
@@ -0,0 +1,110 @@
+package se.ivankrizsan.wiremocktest;
+
+import com.github.tomakehurst.wiremock.admin.AdminTask;
+import com.github.tomakehurst.wiremock.admin.Router;
+import com.github.tomakehurst.wiremock.admin.model.PathParams;
+import com.github.tomakehurst.wiremock.core.Admin;
+import com.github.tomakehurst.wiremock.extension.AdminApiExtension;
+import com.github.tomakehurst.wiremock.http.Request;
+import com.github.tomakehurst.wiremock.http.ResponseDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder.responseDefinition;
+import static com.github.tomakehurst.wiremock.http.RequestMethod.POST;
+import static com.github.tomakehurst.wiremock.http.RequestMethod.PUT;
+
+/**
+ * WireMock admin API extension that accepts batches of stub mappings.
+ * A JSON array of stub mappings POSTed to "/__admin/batch/mappings" is added to the
+ * existing stub mappings, while a JSON array PUT to the same path replaces all
+ * the existing stub mappings.
+ * Either way, all the stub mappings are registered in one single admin request.
+ *
+ * @author Ivan Krizsan
+ */
+public class BatchStubMappingsAdminExtension implements AdminApiExtension {
+    /* Constant(s): */
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchStubMappingsAdminExtension.class);
+    public static final String EXTENSION_NAME = "batch-stub-mappings";
+
+    @Override
+    public void contributeAdminApiRoutes(final Router inRouter) {
+        inRouter.add(POST, StubBatchRegistrar.BATCH_MAPPINGS_ADMIN_PATH, RegisterStubMappingsTask.class);
+        inRouter.add(PUT, StubBatchRegistrar.BATCH_MAPPINGS_ADMIN_PATH, ReplaceStubMappingsTask.class);
+    }
+
+    @Override
+    public String getName() {
+        return EXTENSION_NAME;
+    }
+
+    /**
+     * Creates a response definition reporting the outcome of a batch operation.
+     *
+     * @param inStatus HTTP status of response.
+     * @param inJsonBody JSON body of response.
+     * @return Response definition.
+     */
+    protected static ResponseDefinition createJsonResponse(final int inStatus, final String inJsonBody) {
+        return responseDefinition()
+            .withStatus(inStatus)
+            .withHeader("Content-Type", "application/json")
+            .withBody(inJsonBody)
+            .build();
+    }
+
+    /**
+     * Executes a batch operation on the stub mappings in the body of the supplied request.
+     *
+     * @param inAdmin Admin of WireMock server.
+     * @param inRequest Request containing JSON array of stub mappings.
+     * @param inReplace True if to replace all stub mappings, false to add stub mappings.
+     * @return Response definition.
+     */
+    protected static ResponseDefinition executeBatch(final Admin inAdmin, final Request inRequest,
+        final boolean inReplace) {
+        final StubBatchRegistrar theRegistrar = new StubBatchRegistrar(inAdmin);
+        try {
+            final ByteArrayInputStream theBodyStream = new ByteArrayInputStream(inRequest.getBody());
+            final int theRegisteredCount = inReplace
+                ? theRegistrar.replaceAll(theBodyStream)
+                : theRegistrar.registerAll(theBodyStream);
+            return createJsonResponse(200, StubBatchRegistrar.OBJECT_MAPPER
+                .createObjectNode()
+                .put("registered", theRegisteredCount)
+                .toString());
+        } catch (final IOException | IllegalArgumentException theException) {
+            LOGGER.warn("Rejected stub mapping batch", theException);
+            return createJsonResponse(422, StubBatchRegistrar.OBJECT_MAPPER
+                .createObjectNode()
+                .put("error", theException.getMessage())
+                .toString());
+        }
+    }
+
+    /**
+     * Admin task that adds a batch of stub mappings to the existing stub mappings.
+     */
+    public static class RegisterStubMappingsTask implements AdminTask {
+        @Override
+        public ResponseDefinition execute(final Admin inAdmin, final Request inRequest,
+            final PathParams inPathParams) {
+            return executeBatch(inAdmin, inRequest, false);
+        }
+    }
+
+    /**
+     * Admin task that replaces all existing stub mappings with a batch of stub mappings.
+     */
+    public static class ReplaceStubMappingsTask implements AdminTask {
+        @Override
+        public ResponseDefinition execute(final Admin inAdmin, final Request inRequest,
+            final PathParams inPathParams) {
+            return executeBatch(inAdmin, inRequest, true);
+        }
+    }
+}
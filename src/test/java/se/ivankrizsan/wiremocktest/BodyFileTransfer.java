@@ -0,0 +1,144 @@
+package se.ivankrizsan.wiremocktest;
+
+import javax.net.ssl.SSLSocket;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes static body files, such as the unmodified (non-templated) files under
+ * the "__files" directory, to a connection.
+ * On plain HTTP connections backed by a socket channel, the file is transferred using
+ * {@code FileChannel.transferTo}, which on most operating systems is implemented with
+ * sendfile and thus never copies the file contents into user-space buffers.
+ * Connections that cannot be written to using a channel, for instance TLS connections
+ * where the contents must be encrypted before being written, fall back to copying
+ * the file through a user-space buffer.
+ * Used by the {@link ZeroCopyHttpServer} to serve "__files" bodies of WireMock servers.
+ *
+ * @author Ivan Krizsan
+ */
+public final class BodyFileTransfer {
+    /* Constant(s): */
+    /** Size of the buffer used when copying files through user-space. */
+    protected static final int COPY_BUFFER_SIZE = 64 * 1024;
+    /** Maximum time to wait for a non-blocking channel to become writable. */
+    protected static final long WRITE_TIMEOUT_MILLIS = 30000;
+
+    /**
+     * Hidden constructor, since this class only contains static methods.
+     */
+    private BodyFileTransfer() {
+    }
+
+    /**
+     * Writes the supplied file to the supplied socket, using zero-copy transfer if
+     * possible and falling back to copying through a user-space buffer otherwise.
+     *
+     * @param inFile File to write.
+     * @param inSocket Socket to write file to.
+     * @return Number of bytes written.
+     * @throws IOException If error occurs writing file.
+     */
+    public static long transfer(final Path inFile, final Socket inSocket) throws IOException {
+        final SocketChannel theSocketChannel = inSocket.getChannel();
+        if (theSocketChannel != null && !(inSocket instanceof SSLSocket)) {
+            return transferZeroCopy(inFile, theSocketChannel);
+        }
+        return copy(inFile, inSocket.getOutputStream());
+    }
+
+    /**
+     * Writes the supplied file to the supplied channel using {@code FileChannel.transferTo}.
+     * The transfer is repeated until the entire file has been written, since a single
+     * transfer may write fewer bytes than requested. If the channel is non-blocking, such as
+     * the channels used by Jetty, and no bytes could be written, waits until the channel
+     * becomes writable before transferring again.
+     *
+     * @param inFile File to write.
+     * @param inTargetChannel Channel to write file to.
+     * @return Number of bytes written.
+     * @throws IOException If error occurs writing file, if the file is truncated during transfer
+     * or if a non-blocking channel does not become writable within the write timeout.
+     */
+    public static long transferZeroCopy(final Path inFile, final WritableByteChannel inTargetChannel)
+        throws IOException {
+        Selector theWriteSelector = null;
+        try (FileChannel theFileChannel = FileChannel.open(inFile, StandardOpenOption.READ)) {
+            final long theFileSize = theFileChannel.size();
+            long thePosition = 0;
+            while (thePosition < theFileSize) {
+                final long theTransferredCount = theFileChannel.transferTo(
+                    thePosition, theFileSize - thePosition, inTargetChannel);
+                if (theTransferredCount > 0) {
+                    thePosition += theTransferredCount;
+                } else if (thePosition >= theFileChannel.size()) {
+                    throw new EOFException("Body file " + inFile + " was truncated during transfer");
+                } else if (isNonBlocking(inTargetChannel)) {
+                    /* Send buffer of non-blocking channel full, wait until it can be written to. */
+                    if (theWriteSelector == null) {
+                        theWriteSelector = Selector.open();
+                        ((SelectableChannel) inTargetChannel).register(theWriteSelector, SelectionKey.OP_WRITE);
+                    }
+                    if (theWriteSelector.select(WRITE_TIMEOUT_MILLIS) == 0) {
+                        throw new SocketTimeoutException(
+                            "Timed out waiting to write body file " + inFile + " to channel");
+                    }
+                    theWriteSelector.selectedKeys().clear();
+                } else {
+                    throw new IOException("No bytes of body file " + inFile + " could be transferred");
+                }
+            }
+            return thePosition;
+        } finally {
+            if (theWriteSelector != null) {
+                theWriteSelector.close();
+            }
+        }
+    }
+
+    /**
+     * Determines whether the supplied channel is a selectable channel in non-blocking mode.
+     *
+     * @param inChannel Channel.
+     * @return True if non-blocking, false otherwise.
+     */
+    private static boolean isNonBlocking(final WritableByteChannel inChannel) {
+        return inChannel instanceof SelectableChannel && !((SelectableChannel) inChannel).isBlocking();
+    }
+
+    /**
+     * Writes the supplied file to the supplied output stream by copying it through
+     * a user-space buffer.
+     *
+     * @param inFile File to write.
+     * @param inOutputStream Output stream to write file to. Not closed.
+     * @return Number of bytes written.
+     * @throws IOException If error occurs writing file.
+     */
+    public static long copy(final Path inFile, final OutputStream inOutputStream) throws IOException {
+        final byte[] theBuffer = new byte[COPY_BUFFER_SIZE];
+        long theByteCount = 0;
+        try (InputStream theInputStream = Files.newInputStream(inFile)) {
+            int theReadCount;
+            while ((theReadCount = theInputStream.read(theBuffer)) != -1) {
+                inOutputStream.write(theBuffer, 0, theReadCount);
+                theByteCount += theReadCount;
+            }
+        }
+        inOutputStream.flush();
+        return theByteCount;
+    }
+}
@@ -0,0 +1,492 @@
+package se.ivankrizsan.wiremocktest;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+
+/**
+ * Tests and benchmark comparing zero-copy transfer of static body files with
+ * copying body files through a user-space buffer.
+ * The benchmark serves a large "__files" body file using HTTP GET requests, both from
+ * a WireMock server with the {@link ZeroCopyHttpServer} and from a stock WireMock server,
+ * and logs the CPU time spent by the process per gigabyte served for each of the two servers.
+ * Since it transfers more than a gigabyte, the benchmark only runs when the system property
+ * "bodyfile.benchmark" is set to true, for example:
+ * mvn test -Dbodyfile.benchmark=true -Dtest=BodyFileTransferBenchmarkTests
+ *
+ * @author Ivan Krizsan
+ */
+public class BodyFileTransferBenchmarkTests extends AbstractTestBase {
+    /* Constant(s): */
+    private static final Logger LOGGER = LoggerFactory.getLogger(BodyFileTransferBenchmarkTests.class);
+    protected static final String SOAP_RESPONSE_BODY_FILE =
+        "src/test/resources/__files/se/ivankrizsan/wiremocktest/soap-response.xml";
+    protected static final String BENCHMARK_PROPERTY = "bodyfile.benchmark";
+    protected static final int LARGE_BODY_FILE_SIZE = 64 * 1024 * 1024;
+    /** Larger than loopback socket send buffers, so that non-blocking writes fill them. */
+    protected static final int NON_BLOCKING_BODY_FILE_SIZE = 16 * 1024 * 1024;
+    /* WireMock's bundled self-signed keystore, also used by WireMock when no keystore is configured. */
+    protected static final String TLS_KEYSTORE_RESOURCE = "keystore";
+    protected static final String TLS_KEYSTORE_PASSWORD = "password";
+    protected static final int BENCHMARK_ROUNDS = 8;
+    protected static final double BYTES_PER_GIGABYTE = 1024.0 * 1024.0 * 1024.0;
+    protected static final String BODY_FILE_NAME = "large-body.bin";
+    protected static final String BODY_FILE_PATH = "/large-body";
+    protected static final String BODY_FILE_CONTENT_TYPE = "application/octet-stream";
+
+    /* Class variable(s): */
+    @ClassRule
+    public static TemporaryFolder sTemporaryFolder = new TemporaryFolder();
+
+    /* Instance variable(s): */
+    protected final List<WireMockServer> mWireMockServers = new ArrayList<>();
+
+    /**
+     * Performs cleanup after each test.
+     */
+    @After
+    public void tearDown() {
+        mWireMockServers.forEach(WireMockServer::stop);
+    }
+
+    /**
+     * Tests writing a body file to a stream-based socket, which is the case for
+     * instance with TLS sockets.
+     *
+     * Expected result: The file should be written by copying it through a user-space
+     * buffer and the receiver should receive the exact contents of the file.
+     *
+     * @throws Exception If error occurs transferring the file.
+     */
+    @Test
+    public void streamSocketFallbackTest() throws Exception {
+        final Path theBodyFile = Paths.get(SOAP_RESPONSE_BODY_FILE);
+        final ExecutorService theReceiverExecutor = Executors.newSingleThreadExecutor();
+        try (ServerSocket theServerSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            final Future<byte[]> theReceivedBytes = theReceiverExecutor.submit(() -> {
+                try (Socket theReceiverSocket =
+                    new Socket(InetAddress.getLoopbackAddress(), theServerSocket.getLocalPort())) {
+                    return readFully(theReceiverSocket.getInputStream());
+                }
+            });
+
+            try (Socket theSenderSocket = theServerSocket.accept()) {
+                Assert.assertNull("Stream-based socket should not have a channel",
+                    theSenderSocket.getChannel());
+                BodyFileTransfer.transfer(theBodyFile, theSenderSocket);
+            }
+
+            Assert.assertArrayEquals("Received bytes should equal body file contents",
+                Files.readAllBytes(theBodyFile), theReceivedBytes.get(DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS));
+        } finally {
+            theReceiverExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Tests writing a body file to a TLS socket layered over a channel-based socket,
+     * which is how TLS connections are created on top of accepted plain connections.
+     *
+     * Expected result: The file should be encrypted and written through a user-space
+     * buffer, not transferred unencrypted on the underlying channel, and the receiver
+     * should receive the exact contents of the file.
+     *
+     * @throws Exception If error occurs transferring the file.
+     */
+    @Test
+    public void tlsSocketFallbackTest() throws Exception {
+        final Path theBodyFile = Paths.get(SOAP_RESPONSE_BODY_FILE);
+        final SSLContext theSslContext = createTlsContext();
+        final ExecutorService theReceiverExecutor = Executors.newSingleThreadExecutor();
+        try (ServerSocketChannel theServerChannel = openLoopbackServerChannel()) {
+            final int thePort = theServerChannel.socket().getLocalPort();
+            final Future<byte[]> theReceivedBytes = theReceiverExecutor.submit(() -> {
+                try (Socket theReceiverSocket = theSslContext.getSocketFactory()
+                    .createSocket(InetAddress.getLoopbackAddress(), thePort)) {
+                    return readFully(theReceiverSocket.getInputStream());
+                }
+            });
+
+            try (SocketChannel theSenderChannel = theServerChannel.accept();
+                SSLSocket theSenderSocket = (SSLSocket) theSslContext.getSocketFactory().createSocket(
+                    theSenderChannel.socket(), InetAddress.getLoopbackAddress().getHostAddress(), thePort, true)) {
+                theSenderSocket.setUseClientMode(false);
+                BodyFileTransfer.transfer(theBodyFile, theSenderSocket);
+            }
+
+            Assert.assertArrayEquals("Received decrypted bytes should equal body file contents",
+                Files.readAllBytes(theBodyFile), theReceivedBytes.get(DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS));
+        } finally {
+            theReceiverExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Tests writing a body file larger than the socket send buffer to a non-blocking
+     * socket channel, as used by Jetty.
+     *
+     * Expected result: The transfer should wait for the channel to become writable whenever
+     * the send buffer is full and the receiver should receive the exact contents of the file.
+     *
+     * @throws Exception If error occurs transferring the file.
+     */
+    @Test
+    public void nonBlockingChannelZeroCopyTest() throws Exception {
+        final Path theBodyFile = createRandomBodyFile("non-blocking-body.bin", NON_BLOCKING_BODY_FILE_SIZE);
+        final ExecutorService theReceiverExecutor = Executors.newSingleThreadExecutor();
+        try (ServerSocketChannel theServerChannel = openLoopbackServerChannel()) {
+            final int thePort = theServerChannel.socket().getLocalPort();
+            final Future<byte[]> theReceivedBytes = theReceiverExecutor.submit(() -> {
+                try (Socket theReceiverSocket = new Socket(InetAddress.getLoopbackAddress(), thePort)) {
+                    return readFully(theReceiverSocket.getInputStream());
+                }
+            });
+
+            final long theSentByteCount;
+            try (SocketChannel theSenderChannel = theServerChannel.accept()) {
+                theSenderChannel.configureBlocking(false);
+                theSentByteCount = BodyFileTransfer.transferZeroCopy(theBodyFile, theSenderChannel);
+            }
+
+            Assert.assertEquals("All bytes should have been sent", NON_BLOCKING_BODY_FILE_SIZE, theSentByteCount);
+            Assert.assertArrayEquals("Received bytes should equal body file contents",
+                Files.readAllBytes(theBodyFile), theReceivedBytes.get(DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS));
+        } finally {
+            theReceiverExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Tests writing a body file to a channel-based socket, as used for plain HTTP.
+     *
+     * Expected result: The file should be written using zero-copy transfer and the
+     * receiver should receive the exact contents of the file.
+     *
+     * @throws Exception If error occurs transferring the file.
+     */
+    @Test
+    public void channelSocketZeroCopyTest() throws Exception {
+        final Path theBodyFile = Paths.get(SOAP_RESPONSE_BODY_FILE);
+        final ExecutorService theReceiverExecutor = Executors.newSingleThreadExecutor();
+        try (ServerSocketChannel theServerChannel = openLoopbackServerChannel()) {
+            final int thePort = theServerChannel.socket().getLocalPort();
+            final Future<byte[]> theReceivedBytes = theReceiverExecutor.submit(() -> {
+                try (Socket theReceiverSocket = new Socket(InetAddress.getLoopbackAddress(), thePort)) {
+                    return readFully(theReceiverSocket.getInputStream());
+                }
+            });
+
+            try (SocketChannel theSenderChannel = theServerChannel.accept()) {
+                BodyFileTransfer.transfer(theBodyFile, theSenderChannel.socket());
+            }
+
+            Assert.assertArrayEquals("Received bytes should equal body file contents",
+                Files.readAllBytes(theBodyFile), theReceivedBytes.get(DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS));
+        } finally {
+            theReceiverExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Tests requesting a body file from a WireMock server serving plain HTTP using
+     * the zero-copy HTTP server.
+     *
+     * Expected result: The response should contain the exact contents of the body file and
+     * the headers of the stub mapping, but not the internal body file header. Requests should
+     * be recorded in the request journal and responses without body files should be relayed.
+     *
+     * @throws Exception If error occurs requesting the body file.
+     */
+    @Test
+    public void zeroCopyWireMockServerTest() throws Exception {
+        final Path theFilesRoot = createFilesRoot("zero-copy-root", NON_BLOCKING_BODY_FILE_SIZE);
+        final WireMockServer theWireMockServer = startWireMockServer(theFilesRoot, true);
+        theWireMockServer.stubFor(get(urlEqualTo(BASE_PATH))
+            .willReturn(aResponse().withBody("Hello Zero-Copy!")));
+
+        final HttpURLConnection theConnection = (HttpURLConnection)
+            new URL("http://localhost:" + theWireMockServer.port() + BODY_FILE_PATH).openConnection();
+        final byte[] theReceivedBytes = readFully(theConnection.getInputStream());
+
+        Assert.assertArrayEquals("Received bytes should equal body file contents",
+            Files.readAllBytes(theFilesRoot.resolve("__files").resolve(BODY_FILE_NAME)), theReceivedBytes);
+        Assert.assertEquals("Stub mapping headers should be returned",
+            BODY_FILE_CONTENT_TYPE, theConnection.getContentType());
+        Assert.assertNull("Internal body file header should not be returned",
+            theConnection.getHeaderField(ZeroCopyHttpServer.BODY_FILE_RESPONSE_HEADER));
+        theWireMockServer.verify(getRequestedFor(urlEqualTo(BODY_FILE_PATH)));
+
+        final HttpURLConnection theBodyConnection = (HttpURLConnection)
+            new URL("http://localhost:" + theWireMockServer.port() + BASE_PATH).openConnection();
+        Assert.assertEquals("Response without body file should be relayed", "Hello Zero-Copy!",
+            new String(readFully(theBodyConnection.getInputStream()), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Tests requesting a body file from the HTTPS port of a WireMock server using
+     * the zero-copy HTTP server for plain HTTP.
+     *
+     * Expected result: The body file should be served by WireMock as usual and the response
+     * should contain the exact contents of the body file.
+     *
+     * @throws Exception If error occurs requesting the body file.
+     */
+    @Test
+    public void zeroCopyWireMockServerHttpsFallbackTest() throws Exception {
+        final Path theFilesRoot = createFilesRoot("https-root", NON_BLOCKING_BODY_FILE_SIZE);
+        final WireMockServer theWireMockServer = startWireMockServer(theFilesRoot, true);
+
+        final HttpsURLConnection theConnection = (HttpsURLConnection)
+            new URL("https://localhost:" + theWireMockServer.httpsPort() + BODY_FILE_PATH).openConnection();
+        theConnection.setSSLSocketFactory(createTlsContext().getSocketFactory());
+        /* WireMock's bundled certificate is not issued for localhost. */
+        theConnection.setHostnameVerifier((theHostName, theSession) -> true);
+        final byte[] theReceivedBytes = readFully(theConnection.getInputStream());
+
+        Assert.assertArrayEquals("Received decrypted bytes should equal body file contents",
+            Files.readAllBytes(theFilesRoot.resolve("__files").resolve(BODY_FILE_NAME)), theReceivedBytes);
+        Assert.assertNull("Internal body file header should not be returned",
+            theConnection.getHeaderField(ZeroCopyHttpServer.BODY_FILE_RESPONSE_HEADER));
+    }
+
+    /**
+     * Benchmarks serving a large "__files" body file using HTTP GET requests from a WireMock
+     * server using the zero-copy HTTP server and from a stock WireMock server.
+     *
+     * Expected result: Both WireMock servers should serve the entire body file.
+     * The CPU time per gigabyte served by each WireMock server is logged.
+     *
+     * @throws Exception If error occurs requesting the body file.
+     */
+    @Test
+    public void zeroCopyVersusStockWireMockBenchmarkTest() throws Exception {
+        Assume.assumeTrue("Benchmark only runs when " + BENCHMARK_PROPERTY + " is true",
+            Boolean.getBoolean(BENCHMARK_PROPERTY));
+        Assume.assumeTrue("Process CPU time measurement not supported",
+            ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean);
+        final Path theFilesRoot = createFilesRoot("benchmark-root", LARGE_BODY_FILE_SIZE);
+        final WireMockServer theZeroCopyServer = startWireMockServer(theFilesRoot, true);
+        final WireMockServer theStockServer = startWireMockServer(theFilesRoot, false);
+
+        /* One round of each to warm up before measuring. */
+        requestBodyFile(theZeroCopyServer);
+        requestBodyFile(theStockServer);
+
+        long theZeroCopyCpuNanos = 0;
+        long theStockCpuNanos = 0;
+        for (int i = 0; i < BENCHMARK_ROUNDS; i++) {
+            theZeroCopyCpuNanos += requestBodyFile(theZeroCopyServer);
+            theStockCpuNanos += requestBodyFile(theStockServer);
+        }
+
+        final double theGigabytesServed = (double) LARGE_BODY_FILE_SIZE * BENCHMARK_ROUNDS / BYTES_PER_GIGABYTE;
+        LOGGER.info("Zero-copy WireMock server CPU time: {} ms/GB",
+            String.format("%.1f", theZeroCopyCpuNanos / 1_000_000.0 / theGigabytesServed));
+        LOGGER.info("Stock WireMock server CPU time: {} ms/GB",
+            String.format("%.1f", theStockCpuNanos / 1_000_000.0 / theGigabytesServed));
+    }
+
+    /**
+     * Requests the large body file from the supplied WireMock server once and reads
+     * the entire response.
+     * Since the client runs in the same process, the CPU time includes the time spent
+     * reading the response, which is the same for all WireMock servers.
+     *
+     * @param inWireMockServer WireMock server to request body file from.
+     * @return CPU time, in nanoseconds, spent by the process.
+     * @throws Exception If error occurs requesting the body file.
+     */
+    protected long requestBodyFile(final WireMockServer inWireMockServer) throws Exception {
+        final com.sun.management.OperatingSystemMXBean theOperatingSystemMXBean =
+            (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        final long theStartCpuNanos = theOperatingSystemMXBean.getProcessCpuTime();
+
+        final HttpURLConnection theConnection = (HttpURLConnection)
+            new URL("http://localhost:" + inWireMockServer.port() + BODY_FILE_PATH).openConnection();
+        final long theReceivedByteCount;
+        try (InputStream theInputStream = theConnection.getInputStream()) {
+            theReceivedByteCount = drain(theInputStream);
+        }
+
+        final long theCpuNanos = theOperatingSystemMXBean.getProcessCpuTime() - theStartCpuNanos;
+        Assert.assertEquals("All bytes should have been received", LARGE_BODY_FILE_SIZE, theReceivedByteCount);
+        return theCpuNanos;
+    }
+
+    /**
+     * Starts a WireMock server listening for HTTP and HTTPS requests on any free ports, serving
+     * files from the supplied files root and with a stub mapping responding to requests for
+     * the large body path with the body file.
+     *
+     * @param inFilesRoot Files root directory, containing the "__files" directory.
+     * @param inZeroCopy True if to serve plain HTTP using the zero-copy HTTP server, false for
+     * a stock WireMock server.
+     * @return Started WireMock server.
+     */
+    protected WireMockServer startWireMockServer(final Path inFilesRoot, final boolean inZeroCopy) {
+        final WireMockConfiguration theConfiguration = wireMockConfig()
+            .dynamicPort()
+            .dynamicHttpsPort()
+            .usingFilesUnderDirectory(inFilesRoot.toString());
+        if (inZeroCopy) {
+            theConfiguration
+                .httpServerFactory(new ZeroCopyHttpServerFactory(0))
+                .extensions(new ZeroCopyBodyFileTransformer());
+        }
+        final WireMockServer theWireMockServer = new WireMockServer(theConfiguration);
+        mWireMockServers.add(theWireMockServer);
+        theWireMockServer.start();
+
+        theWireMockServer.stubFor(get(urlEqualTo(BODY_FILE_PATH))
+            .willReturn(aResponse()
+                .withHeader("Content-Type", BODY_FILE_CONTENT_TYPE)
+                .withBodyFile(BODY_FILE_NAME)));
+        return theWireMockServer;
+    }
+
+    /**
+     * Creates a files root directory in the temporary folder, with a body file with random
+     * contents in its "__files" directory.
+     *
+     * @param inRootName Name of files root directory.
+     * @param inSize Size of body file in bytes.
+     * @return Path to files root directory.
+     * @throws Exception If error occurs creating the directory or the body file.
+     */
+    protected static Path createFilesRoot(final String inRootName, final int inSize) throws Exception {
+        final Path theFilesRoot = sTemporaryFolder.newFolder(inRootName, "__files").toPath().getParent();
+        final byte[] theContents = new byte[inSize];
+        new Random(inSize).nextBytes(theContents);
+        Files.write(theFilesRoot.resolve("__files").resolve(BODY_FILE_NAME), theContents);
+        return theFilesRoot;
+    }
+
+    /**
+     * Creates a body file with random contents in the temporary folder.
+     *
+     * @param inFileName Name of file.
+     * @param inSize Size of file in bytes.
+     * @return Path to file.
+     * @throws Exception If error occurs creating the file.
+     */
+    protected static Path createRandomBodyFile(final String inFileName, final int inSize) throws Exception {
+        final byte[] theContents = new byte[inSize];
+        new Random(inSize).nextBytes(theContents);
+        final Path theBodyFile = sTemporaryFolder.newFile(inFileName).toPath();
+        Files.write(theBodyFile, theContents);
+        return theBodyFile;
+    }
+
+    /**
+     * Creates a TLS context using WireMock's bundled self-signed keystore both as key store
+     * and as trust store.
+     *
+     * @return TLS context.
+     * @throws Exception If error occurs loading the keystore.
+     */
+    protected static SSLContext createTlsContext() throws Exception {
+        final KeyStore theKeyStore = KeyStore.getInstance("JKS");
+        try (InputStream theKeyStoreStream =
+            BodyFileTransferBenchmarkTests.class.getClassLoader().getResourceAsStream(TLS_KEYSTORE_RESOURCE)) {
+            theKeyStore.load(theKeyStoreStream, TLS_KEYSTORE_PASSWORD.toCharArray());
+        }
+        final KeyManagerFactory theKeyManagerFactory =
+            KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        theKeyManagerFactory.init(theKeyStore, TLS_KEYSTORE_PASSWORD.toCharArray());
+        final TrustManagerFactory theTrustManagerFactory =
+            TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        theTrustManagerFactory.init(theKeyStore);
+
+        final SSLContext theSslContext = SSLContext.getInstance("TLS");
+        theSslContext.init(theKeyManagerFactory.getKeyManagers(), theTrustManagerFactory.getTrustManagers(), null);
+        return theSslContext;
+    }
+
+    /**
+     * Opens a blocking server socket channel bound to an ephemeral loopback port.
+     *
+     * @return Server socket channel.
+     * @throws Exception If error occurs opening channel.
+     */
+    protected static ServerSocketChannel openLoopbackServerChannel() throws Exception {
+        final ServerSocketChannel theServerChannel = ServerSocketChannel.open();
+        theServerChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        return theServerChannel;
+    }
+
+    /**
+     * Reads all bytes from the supplied input stream.
+     *
+     * @param inInputStream Input stream to read from.
+     * @return Bytes read.
+     * @throws Exception If error occurs reading.
+     */
+    protected static byte[] readFully(final InputStream inInputStream) throws Exception {
+        final ByteArrayOutputStream theBytes = new ByteArrayOutputStream();
+        final byte[] theBuffer = new byte[8192];
+        int theReadCount;
+        while ((theReadCount = inInputStream.read(theBuffer)) != -1) {
+            theBytes.write(theBuffer, 0, theReadCount);
+        }
+        return theBytes.toByteArray();
+    }
+
+    /**
+     * Reads and discards all bytes from the supplied input stream.
+     *
+     * @param inInputStream Input stream to read from.
+     * @return Number of bytes read.
+     * @throws Exception If error occurs reading.
+     */
+    protected static long drain(final InputStream inInputStream) throws Exception {
+        final byte[] theBuffer = new byte[64 * 1024];
+        long theByteCount = 0;
+        int theReadCount;
+        while ((theReadCount = inInputStream.read(theBuffer)) != -1) {
+            theByteCount += theReadCount;
+        }
+        return theByteCount;
+    }
+}
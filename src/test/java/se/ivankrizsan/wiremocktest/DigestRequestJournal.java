@@ -0,0 +1,390 @@
+package se.ivankrizsan.wiremocktest;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.tomakehurst.wiremock.client.RequestPatternBuilder;
+import com.github.tomakehurst.wiremock.client.VerificationException;
+import com.github.tomakehurst.wiremock.common.Json;
+import com.github.tomakehurst.wiremock.http.HttpHeader;
+import com.github.tomakehurst.wiremock.http.Request;
+import com.github.tomakehurst.wiremock.http.RequestMethod;
+import com.github.tomakehurst.wiremock.http.RequestListener;
+import com.github.tomakehurst.wiremock.http.Response;
+import com.github.tomakehurst.wiremock.matching.ContentPattern;
+import com.github.tomakehurst.wiremock.matching.EqualToPattern;
+import com.github.tomakehurst.wiremock.matching.RequestPattern;
+import com.github.tomakehurst.wiremock.matching.StringValuePattern;
+import com.github.tomakehurst.wiremock.matching.UrlPattern;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Request journal that, instead of full request bodies, keeps a digest of each
+ * body, the size of the body and optionally a truncated prefix of the body.
+ * Entries are stored off-heap, in direct byte buffers, so the memory used per
+ * journaled request is small and independent of the size of the request body.
+ * Register the journal as a request listener with a WireMock server, preferably with
+ * the regular WireMock request journal disabled, and use the verification methods of
+ * this journal instead of those of the WireMock server. With the regular request journal
+ * disabled, the verification methods of the WireMock server, such as {@code verify} and
+ * {@code findAll}, throw exceptions.
+ * Requests are verified using regular WireMock request patterns. Body patterns requiring
+ * case-sensitive equality are evaluated by comparing digests, while other body patterns,
+ * including case-insensitive equality, can only match requests whose entire body has been
+ * kept as body prefix.
+ *
+ * @author Ivan Krizsan
+ */
+public class DigestRequestJournal implements RequestListener {
+    /* Constant(s): */
+    /** Size of the direct byte buffers in which entries are stored. */
+    protected static final int SEGMENT_SIZE = 1024 * 1024;
+
+    /* Instance variable(s): */
+    protected final int mBodyPrefixLength;
+    protected final List<ByteBuffer> mSegments = new ArrayList<>();
+    protected int mEntryCount;
+
+    /**
+     * Creates a journal that keeps a prefix of the supplied length of each request body.
+     *
+     * @param inBodyPrefixLength Maximum number of bytes of body prefix to keep.
+     * Zero if no body prefix is to be kept.
+     */
+    public DigestRequestJournal(final int inBodyPrefixLength) {
+        mBodyPrefixLength = inBodyPrefixLength;
+    }
+
+    @Override
+    public void requestReceived(final Request inRequest, final Response inResponse) {
+        final byte[] theBody = inRequest.getBody() != null ? inRequest.getBody() : new byte[0];
+        final Map<String, List<String>> theHeaders = new LinkedHashMap<>();
+        for (final HttpHeader theHeader : inRequest.getHeaders().all()) {
+            theHeaders.put(theHeader.key(), theHeader.values());
+        }
+
+        final DigestedRequest theDigestedRequest = new DigestedRequest(
+            inRequest.getMethod().getName(),
+            inRequest.getUrl(),
+            inRequest.getAbsoluteUrl(),
+            theHeaders,
+            inResponse.wasConfigured(),
+            theBody.length,
+            DigestedRequest.digest(theBody),
+            Arrays.copyOf(theBody, Math.min(mBodyPrefixLength, theBody.length)));
+        append(encode(theDigestedRequest));
+    }
+
+    /**
+     * Finds all journaled requests that were not matched by any stub mapping.
+     *
+     * @return Unmatched requests.
+     */
+    public List<DigestedRequest> findAllUnmatchedRequests() {
+        return findRequests(theRequest -> !theRequest.wasMatched());
+    }
+
+    /**
+     * Finds all journaled requests matching the supplied predicate.
+     *
+     * @param inPredicate Predicate requests are to match.
+     * @return Matching requests, in the order they were received.
+     */
+    public List<DigestedRequest> findRequests(final Predicate<DigestedRequest> inPredicate) {
+        final List<DigestedRequest> theRequests = new ArrayList<>();
+        for (final ByteBuffer theSegment : snapshotSegments()) {
+            while (theSegment.hasRemaining()) {
+                final DigestedRequest theRequest = decode(theSegment);
+                if (inPredicate.test(theRequest)) {
+                    theRequests.add(theRequest);
+                }
+            }
+        }
+        return theRequests;
+    }
+
+    /**
+     * Finds all journaled requests matching the supplied WireMock request pattern.
+     *
+     * @param inRequestPatternBuilder Builder of request pattern.
+     * @return Matching requests, in the order they were received.
+     */
+    public List<DigestedRequest> findRequestsMatching(final RequestPatternBuilder inRequestPatternBuilder) {
+        final RequestPattern theRequestPattern = inRequestPatternBuilder.build();
+        final List<ContentPattern<?>> theBodyPatterns = theRequestPattern.getBodyPatterns() != null
+            ? theRequestPattern.getBodyPatterns() : Collections.emptyList();
+        final RequestPattern theRequestPatternWithoutBody =
+            theBodyPatterns.isEmpty() ? theRequestPattern : removeBodyPatterns(theRequestPattern);
+        final RequestMethod theMethod = theRequestPattern.getMethod();
+        final UrlPattern theUrlPattern = theRequestPattern.getUrlMatcher();
+
+        /*
+         * Match on method, URL and body first, so that a logged request is only created
+         * for the requests that need to be matched against the entire request pattern.
+         */
+        return findRequests(theRequest ->
+            (theMethod == null || theMethod.equals(RequestMethod.ANY)
+                || theMethod.getName().equals(theRequest.getMethod()))
+                && (theUrlPattern == null || theUrlPattern.match(theRequest.getUrl()).isExactMatch())
+                && theBodyPatterns.stream().allMatch(theBodyPattern -> bodyMatches(theRequest, theBodyPattern))
+                && theRequestPatternWithoutBody.match(theRequest.toLoggedRequest()).isExactMatch());
+    }
+
+    /**
+     * Counts the journaled requests matching the supplied WireMock request pattern.
+     *
+     * @param inRequestPatternBuilder Builder of request pattern.
+     * @return Number of matching requests.
+     */
+    public int countRequestsMatching(final RequestPatternBuilder inRequestPatternBuilder) {
+        return findRequestsMatching(inRequestPatternBuilder).size();
+    }
+
+    /**
+     * Verifies that the supplied number of journaled requests match the supplied
+     * WireMock request pattern.
+     *
+     * @param inExpectedCount Expected number of matching requests.
+     * @param inRequestPatternBuilder Builder of request pattern.
+     * @throws VerificationException If the number of matching requests differs.
+     */
+    public void verify(final int inExpectedCount, final RequestPatternBuilder inRequestPatternBuilder) {
+        final int theActualCount = countRequestsMatching(inRequestPatternBuilder);
+        if (theActualCount != inExpectedCount) {
+            throw new VerificationException("Expected " + inExpectedCount + " requests matching "
+                + inRequestPatternBuilder.build() + " but found " + theActualCount);
+        }
+    }
+
+    /**
+     * Counts the journaled requests with the supplied method and URL.
+     *
+     * @param inMethod HTTP method.
+     * @param inUrl URL.
+     * @return Number of requests.
+     */
+    public int countRequests(final String inMethod, final String inUrl) {
+        return findRequests(theRequest ->
+            theRequest.getMethod().equals(inMethod) && theRequest.getUrl().equals(inUrl)).size();
+    }
+
+    /**
+     * Counts the journaled requests with the supplied method, URL and body.
+     * Bodies are compared by size and digest.
+     *
+     * @param inMethod HTTP method.
+     * @param inUrl URL.
+     * @param inBody Request body.
+     * @return Number of requests.
+     */
+    public int countRequestsWithBody(final String inMethod, final String inUrl, final String inBody) {
+        final byte[] theBody = inBody.getBytes(StandardCharsets.UTF_8);
+        final byte[] theBodyDigest = DigestedRequest.digest(theBody);
+        return findRequests(theRequest ->
+            theRequest.getMethod().equals(inMethod)
+                && theRequest.getUrl().equals(inUrl)
+                && theRequest.getBodySize() == theBody.length
+                && Arrays.equals(theRequest.mBodyDigest, theBodyDigest)).size();
+    }
+
+    /**
+     * Retrieves the number of journaled requests.
+     *
+     * @return Number of requests.
+     */
+    public synchronized int getEntryCount() {
+        return mEntryCount;
+    }
+
+    /**
+     * Retrieves the number of off-heap bytes used by journal entries.
+     *
+     * @return Number of bytes.
+     */
+    public synchronized long getUsedBytes() {
+        long theUsedBytes = 0;
+        for (final ByteBuffer theSegment : mSegments) {
+            theUsedBytes += theSegment.position();
+        }
+        return theUsedBytes;
+    }
+
+    /**
+     * Removes all journaled requests. The direct byte buffers holding the entries become
+     * unreachable, but their off-heap memory is only freed when they are garbage collected.
+     */
+    public synchronized void reset() {
+        mSegments.clear();
+        mEntryCount = 0;
+    }
+
+    /**
+     * Determines whether the body of the supplied request matches the supplied body pattern.
+     * Case-sensitive equality patterns are evaluated by comparing digests. Other string patterns,
+     * including case-insensitive equality patterns, are evaluated against the body prefix,
+     * provided that it contains the entire body.
+     *
+     * @param inRequest Journaled request.
+     * @param inBodyPattern Body pattern.
+     * @return True if body matches, false otherwise.
+     */
+    protected static boolean bodyMatches(final DigestedRequest inRequest, final ContentPattern<?> inBodyPattern) {
+        if (inBodyPattern instanceof EqualToPattern
+            && !Boolean.TRUE.equals(((EqualToPattern) inBodyPattern).getCaseInsensitive())) {
+            return inRequest.bodyEquals(((EqualToPattern) inBodyPattern).getValue());
+        }
+        if (inBodyPattern instanceof StringValuePattern && inRequest.isBodyComplete()) {
+            return ((StringValuePattern) inBodyPattern).match(inRequest.getBodyPrefix()).isExactMatch();
+        }
+        return false;
+    }
+
+    /**
+     * Creates a copy of the supplied request pattern without body patterns.
+     *
+     * @param inRequestPattern Request pattern.
+     * @return Request pattern without body patterns.
+     */
+    protected static RequestPattern removeBodyPatterns(final RequestPattern inRequestPattern) {
+        try {
+            final ObjectNode theRequestPatternNode =
+                (ObjectNode) DigestedRequest.OBJECT_MAPPER.readTree(Json.write(inRequestPattern));
+            theRequestPatternNode.remove("bodyPatterns");
+            return Json.read(theRequestPatternNode.toString(), RequestPattern.class);
+        } catch (final IOException theException) {
+            throw new UncheckedIOException("Error copying request pattern", theException);
+        }
+    }
+
+    /**
+     * Appends the supplied encoded entry to the last segment, allocating a new segment
+     * if there is not enough room in the last segment.
+     *
+     * @param inEntry Encoded entry.
+     */
+    protected synchronized void append(final byte[] inEntry) {
+        ByteBuffer theSegment = mSegments.isEmpty() ? null : mSegments.get(mSegments.size() - 1);
+        if (theSegment == null || theSegment.remaining() < inEntry.length) {
+            theSegment = ByteBuffer.allocateDirect(Math.max(SEGMENT_SIZE, inEntry.length));
+            mSegments.add(theSegment);
+        }
+        theSegment.put(inEntry);
+        mEntryCount++;
+    }
+
+    /**
+     * Creates read-only views of the written part of each segment.
+     *
+     * @return Segment views positioned at the first entry.
+     */
+    protected synchronized List<ByteBuffer> snapshotSegments() {
+        final List<ByteBuffer> theSegmentViews = new ArrayList<>(mSegments.size());
+        for (final ByteBuffer theSegment : mSegments) {
+            final ByteBuffer theSegmentView = theSegment.asReadOnlyBuffer();
+            theSegmentView.flip();
+            theSegmentViews.add(theSegmentView);
+        }
+        return theSegmentViews;
+    }
+
+    /**
+     * Encodes the supplied digested request into a journal entry.
+     *
+     * @param inRequest Digested request.
+     * @return Encoded entry.
+     */
+    protected static byte[] encode(final DigestedRequest inRequest) {
+        final ByteArrayOutputStream theBytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream theOutput = new DataOutputStream(theBytes)) {
+            writeString(theOutput, inRequest.getMethod());
+            writeString(theOutput, inRequest.getUrl());
+            writeString(theOutput, inRequest.getAbsoluteUrl());
+            theOutput.writeInt(inRequest.getHeaders().size());
+            for (final Map.Entry<String, List<String>> theHeader : inRequest.getHeaders().entrySet()) {
+                writeString(theOutput, theHeader.getKey());
+                theOutput.writeInt(theHeader.getValue().size());
+                for (final String theValue : theHeader.getValue()) {
+                    writeString(theOutput, theValue);
+                }
+            }
+            theOutput.writeBoolean(inRequest.wasMatched());
+            theOutput.writeLong(inRequest.getBodySize());
+            theOutput.writeInt(inRequest.mBodyDigest.length);
+            theOutput.write(inRequest.mBodyDigest);
+            theOutput.writeInt(inRequest.mBodyPrefix.length);
+            theOutput.write(inRequest.mBodyPrefix);
+        } catch (final IOException theException) {
+            throw new UncheckedIOException("Error encoding journal entry", theException);
+        }
+        return theBytes.toByteArray();
+    }
+
+    /**
+     * Decodes the journal entry at the current position of the supplied buffer,
+     * advancing the position to the next entry.
+     *
+     * @param inBuffer Buffer to decode from.
+     * @return Digested request.
+     */
+    protected static DigestedRequest decode(final ByteBuffer inBuffer) {
+        final String theMethod = readString(inBuffer);
+        final String theUrl = readString(inBuffer);
+        final String theAbsoluteUrl = readString(inBuffer);
+        final int theHeaderCount = inBuffer.getInt();
+        final Map<String, List<String>> theHeaders = new LinkedHashMap<>();
+        for (int i = 0; i < theHeaderCount; i++) {
+            final String theName = readString(inBuffer);
+            final int theValueCount = inBuffer.getInt();
+            final List<String> theValues = new ArrayList<>(theValueCount);
+            for (int j = 0; j < theValueCount; j++) {
+                theValues.add(readString(inBuffer));
+            }
+            theHeaders.put(theName, theValues);
+        }
+        final boolean theMatched = inBuffer.get() != 0;
+        final long theBodySize = inBuffer.getLong();
+        final byte[] theBodyDigest = new byte[inBuffer.getInt()];
+        inBuffer.get(theBodyDigest);
+        final byte[] theBodyPrefix = new byte[inBuffer.getInt()];
+        inBuffer.get(theBodyPrefix);
+
+        return new DigestedRequest(theMethod, theUrl, theAbsoluteUrl, theHeaders, theMatched, theBodySize,
+            theBodyDigest, theBodyPrefix);
+    }
+
+    /**
+     * Writes the supplied string as its length followed by its UTF-8 bytes.
+     *
+     * @param inOutput Output to write to.
+     * @param inString String to write.
+     * @throws IOException If error occurs writing.
+     */
+    protected static void writeString(final DataOutputStream inOutput, final String inString) throws IOException {
+        final byte[] theBytes = inString.getBytes(StandardCharsets.UTF_8);
+        inOutput.writeInt(theBytes.length);
+        inOutput.write(theBytes);
+    }
+
+    /**
+     * Reads a string written by {@code writeString} from the supplied buffer.
+     *
+     * @param inBuffer Buffer to read from.
+     * @return String.
+     */
+    protected static String readString(final ByteBuffer inBuffer) {
+        final byte[] theBytes = new byte[inBuffer.getInt()];
+        inBuffer.get(theBytes);
+        return new String(theBytes, StandardCharsets.UTF_8);
+    }
+}
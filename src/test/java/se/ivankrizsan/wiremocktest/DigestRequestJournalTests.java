@@ -0,0 +1,249 @@
+package se.ivankrizsan.wiremocktest;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.VerificationException;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import io.restassured.RestAssured;
+import io.restassured.http.ContentType;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.containing;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalToIgnoreCase;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.postRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.putRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+
+/**
+ * Examples on how to verify requests using a request journal that keeps body digests
+ * instead of full request bodies.
+ * The regular WireMock request journal is disabled and unmatched requests are instead
+ * retrieved from the digest request journal when each test has completed.
+ *
+ * @author Ivan Krizsan
+ */
+public class DigestRequestJournalTests extends AbstractTestBase {
+    /* Constant(s): */
+    private static final Logger LOGGER = LoggerFactory.getLogger(DigestRequestJournalTests.class);
+    protected static final int BODY_PREFIX_LENGTH = 32;
+    protected static final int LARGE_BODY_SIZE = 1024 * 1024;
+    /** Upper bound of journal entry size for the requests sent by these tests. */
+    protected static final int MAX_ENTRY_BYTES = 1024;
+
+    /* Instance variable(s): */
+    protected WireMockServer mWireMockServer;
+    protected DigestRequestJournal mRequestJournal;
+
+    /**
+     * Performs preparations before each test.
+     */
+    @Before
+    public void setup() {
+        initializeRestAssuredHttp();
+
+        /*
+         * Create the WireMock server with the regular request journal disabled,
+         * so that full request bodies are not retained.
+         */
+        mWireMockServer = new WireMockServer(
+            WireMockConfiguration
+                .options()
+                .port(HTTP_ENDPOINT_PORT)
+                .disableRequestJournal());
+        mRequestJournal = new DigestRequestJournal(BODY_PREFIX_LENGTH);
+        mWireMockServer.addMockServiceRequestListener(mRequestJournal);
+        mWireMockServer.start();
+
+        mWireMockServer.stubFor(
+            post(urlEqualTo(BASE_PATH))
+                .willReturn(
+                    aResponse()
+                        .withStatus(HttpStatus.OK.value())
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_PLAIN_VALUE)
+                        .withBody("Hello client, this is the response body.")
+                )
+        );
+    }
+
+    /**
+     * Performs cleanup after each test.
+     */
+    @After
+    public void tearDown() {
+        mWireMockServer.stop();
+
+        /* Log any unmatched requests found in the digest request journal. */
+        final List<DigestedRequest> theUnmatchedRequests = mRequestJournal.findAllUnmatchedRequests();
+        if (!theUnmatchedRequests.isEmpty()) {
+            LOGGER.error("Unmatched requests: {}", theUnmatchedRequests);
+        }
+        mRequestJournal.reset();
+    }
+
+    /**
+     * Tests sending requests with large bodies.
+     *
+     * Expected result: The size of each journal entry should be small and independent
+     * of the size of the request body, and the requests should be verifiable by body.
+     */
+    @Test
+    public void largeBodyJournalEntrySizeTest() {
+        final char[] theBodyCharacters = new char[LARGE_BODY_SIZE];
+        Arrays.fill(theBodyCharacters, 'x');
+        final String theLargeBody = new String(theBodyCharacters);
+
+        for (int i = 0; i < 10; i++) {
+            sendPostRequest(theLargeBody);
+        }
+
+        Assert.assertEquals("All requests should be journaled", 10, mRequestJournal.getEntryCount());
+        Assert.assertTrue("Journal entries should be small regardless of body size",
+            mRequestJournal.getUsedBytes() <= 10 * MAX_ENTRY_BYTES);
+        Assert.assertEquals("Requests should be verifiable by body digest",
+            10, mRequestJournal.countRequestsWithBody("POST", BASE_PATH, theLargeBody));
+
+        final DigestedRequest theRequest = mRequestJournal.findRequests(theEntry -> true).get(0);
+        Assert.assertEquals("Body size should be recorded", LARGE_BODY_SIZE, theRequest.getBodySize());
+        Assert.assertEquals("Body prefix should be truncated",
+            theLargeBody.substring(0, BODY_PREFIX_LENGTH), theRequest.getBodyPrefix());
+    }
+
+    /**
+     * Tests verifying requests by method, URL, headers and body.
+     *
+     * Expected result: Requests should be found by method and URL, headers should be
+     * available and only requests with an equal body should match on body.
+     */
+    @Test
+    public void verifyByBodyDigestTest() {
+        sendPostRequest("first body");
+        sendPostRequest("second body");
+
+        Assert.assertEquals("Both requests should be found by method and URL",
+            2, mRequestJournal.countRequests("POST", BASE_PATH));
+        Assert.assertEquals("Only request with equal body should match",
+            1, mRequestJournal.countRequestsWithBody("POST", BASE_PATH, "first body"));
+        Assert.assertEquals("No request should match other body",
+            0, mRequestJournal.countRequestsWithBody("POST", BASE_PATH, "third body"));
+
+        final DigestedRequest theRequest = mRequestJournal.findRequests(theEntry -> true).get(1);
+        Assert.assertTrue("Body equality should be determined by digest", theRequest.bodyEquals("second body"));
+        Assert.assertTrue("Request should have been matched", theRequest.wasMatched());
+        Assert.assertTrue("Headers should be journaled",
+            theRequest.getHeader(HttpHeaders.CONTENT_TYPE).startsWith(MediaType.TEXT_PLAIN_VALUE));
+    }
+
+    /**
+     * Tests verifying requests using WireMock request patterns.
+     *
+     * Expected result: Requests should be matched by URL and headers, by body equality
+     * using digests regardless of body size and by other body patterns when the entire
+     * body has been kept.
+     */
+    @Test
+    public void verifyWithRequestPatternTest() {
+        final char[] theBodyCharacters = new char[LARGE_BODY_SIZE];
+        Arrays.fill(theBodyCharacters, 'y');
+        final String theLargeBody = new String(theBodyCharacters);
+        sendPostRequest("short body");
+        sendPostRequest(theLargeBody);
+
+        mRequestJournal.verify(2, postRequestedFor(urlEqualTo(BASE_PATH))
+            .withHeader(HttpHeaders.CONTENT_TYPE, containing(MediaType.TEXT_PLAIN_VALUE)));
+        mRequestJournal.verify(1, postRequestedFor(urlEqualTo(BASE_PATH))
+            .withRequestBody(equalTo(theLargeBody)));
+        mRequestJournal.verify(1, postRequestedFor(urlEqualTo(BASE_PATH))
+            .withRequestBody(containing("short")));
+        Assert.assertEquals("Truncated body should not match non-equality body pattern",
+            0, mRequestJournal.countRequestsMatching(postRequestedFor(urlEqualTo(BASE_PATH))
+                .withRequestBody(containing("yyy"))));
+
+        try {
+            mRequestJournal.verify(1, putRequestedFor(urlEqualTo(BASE_PATH)));
+            Assert.fail("Verifying request that was not sent should fail");
+        } catch (final VerificationException theException) {
+            LOGGER.info("Verification failed as expected: {}", theException.getMessage());
+        }
+    }
+
+    /**
+     * Tests verifying requests using a case-insensitive body equality pattern and
+     * examining the logged request created from a journaled request.
+     *
+     * Expected result: A request whose entire body has been kept should match the pattern
+     * regardless of case, a request with a truncated body should not match and the logged
+     * request should have the absolute URL of the request.
+     */
+    @Test
+    public void caseInsensitiveBodyPatternTest() {
+        final char[] theBodyCharacters = new char[LARGE_BODY_SIZE];
+        Arrays.fill(theBodyCharacters, 'z');
+        final String theLargeBody = new String(theBodyCharacters);
+        sendPostRequest("Short Body");
+        sendPostRequest(theLargeBody);
+
+        final List<DigestedRequest> theMatchingRequests = mRequestJournal.findRequestsMatching(
+            postRequestedFor(urlEqualTo(BASE_PATH)).withRequestBody(equalToIgnoreCase("SHORT BODY")));
+        Assert.assertEquals("Complete body should match regardless of case", 1, theMatchingRequests.size());
+        Assert.assertEquals("Truncated body should not match case-insensitive body pattern",
+            0, mRequestJournal.countRequestsMatching(postRequestedFor(urlEqualTo(BASE_PATH))
+                .withRequestBody(equalToIgnoreCase(theLargeBody.toUpperCase()))));
+        Assert.assertEquals("Logged request should have absolute URL of request",
+            BASE_HTTP_URL, theMatchingRequests.get(0).toLoggedRequest().getAbsoluteUrl());
+    }
+
+    /**
+     * Tests sending a request that does not match any stub mapping.
+     *
+     * Expected result: The request should be found among the unmatched requests
+     * in the digest request journal.
+     */
+    @Test
+    public void unmatchedRequestTest() {
+        RestAssured
+            .given()
+            .contentType(ContentType.TEXT)
+            .body("unexpected")
+            .when()
+            .put(BASE_HTTP_URL)
+            .then()
+            .statusCode(HttpStatus.NOT_FOUND.value());
+
+        final List<DigestedRequest> theUnmatchedRequests = mRequestJournal.findAllUnmatchedRequests();
+        Assert.assertEquals("One request should be unmatched", 1, theUnmatchedRequests.size());
+        Assert.assertEquals("Unmatched request should be the PUT request",
+            "PUT", theUnmatchedRequests.get(0).getMethod());
+
+        /* The unmatched request has been verified and is not to be logged as an error. */
+        mRequestJournal.reset();
+    }
+
+    /**
+     * Sends a POST request with the supplied body, expecting it to be matched.
+     *
+     * @param inBody Request body.
+     */
+    protected void sendPostRequest(final String inBody) {
+        RestAssured
+            .given()
+            .contentType(ContentType.TEXT)
+            .body(inBody)
+            .when()
+            .post(BASE_HTTP_URL)
+            .then()
+            .statusCode(HttpStatus.OK.value());
+    }
+}
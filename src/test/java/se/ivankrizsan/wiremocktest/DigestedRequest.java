@@ -0,0 +1,196 @@
+package se.ivankrizsan.wiremocktest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.github.tomakehurst.wiremock.common.Json;
+import com.github.tomakehurst.wiremock.verification.LoggedRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A request recorded in a {@link DigestRequestJournal}.
+ * Instead of the request body, only a digest of the body, the size of the body and
+ * optionally a prefix of the body is kept.
+ *
+ * @author Ivan Krizsan
+ */
+public class DigestedRequest {
+    /* Constant(s): */
+    /** Algorithm used to calculate body digests. */
+    public static final String DIGEST_ALGORITHM = "SHA-256";
+    protected static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    protected static final ThreadLocal<MessageDigest> MESSAGE_DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (final NoSuchAlgorithmException theException) {
+            throw new IllegalStateException("Digest algorithm not available: " + DIGEST_ALGORITHM, theException);
+        }
+    });
+
+    /* Instance variable(s): */
+    protected final String mMethod;
+    protected final String mUrl;
+    protected final String mAbsoluteUrl;
+    protected final Map<String, List<String>> mHeaders;
+    protected final boolean mMatched;
+    protected final long mBodySize;
+    protected final byte[] mBodyDigest;
+    protected final byte[] mBodyPrefix;
+
+    /**
+     * Creates a digested request.
+     *
+     * @param inMethod HTTP method of request.
+     * @param inUrl URL of request.
+     * @param inAbsoluteUrl Absolute URL of request, including scheme, host and port.
+     * @param inHeaders HTTP headers of request.
+     * @param inMatched True if request was matched by a stub mapping.
+     * @param inBodySize Size of request body in bytes.
+     * @param inBodyDigest Digest of request body.
+     * @param inBodyPrefix Prefix of request body, possibly empty.
+     */
+    public DigestedRequest(final String inMethod, final String inUrl, final String inAbsoluteUrl,
+        final Map<String, List<String>> inHeaders, final boolean inMatched, final long inBodySize,
+        final byte[] inBodyDigest, final byte[] inBodyPrefix) {
+        mMethod = inMethod;
+        mUrl = inUrl;
+        mAbsoluteUrl = inAbsoluteUrl;
+        mHeaders = Collections.unmodifiableMap(inHeaders);
+        mMatched = inMatched;
+        mBodySize = inBodySize;
+        mBodyDigest = inBodyDigest;
+        mBodyPrefix = inBodyPrefix;
+    }
+
+    /**
+     * Calculates the digest of the supplied body.
+     *
+     * @param inBody Body.
+     * @return Body digest.
+     */
+    public static byte[] digest(final byte[] inBody) {
+        final MessageDigest theMessageDigest = MESSAGE_DIGEST.get();
+        theMessageDigest.reset();
+        return theMessageDigest.digest(inBody);
+    }
+
+    public String getMethod() {
+        return mMethod;
+    }
+
+    public String getUrl() {
+        return mUrl;
+    }
+
+    public String getAbsoluteUrl() {
+        return mAbsoluteUrl;
+    }
+
+    public Map<String, List<String>> getHeaders() {
+        return mHeaders;
+    }
+
+    /**
+     * Retrieves the first value of the header with the supplied name.
+     * Header names are not case sensitive.
+     *
+     * @param inHeaderName Header name.
+     * @return First header value, or null if no header with the name.
+     */
+    public String getHeader(final String inHeaderName) {
+        for (final Map.Entry<String, List<String>> theHeader : mHeaders.entrySet()) {
+            if (theHeader.getKey().equalsIgnoreCase(inHeaderName) && !theHeader.getValue().isEmpty()) {
+                return theHeader.getValue().get(0);
+            }
+        }
+        return null;
+    }
+
+    public boolean wasMatched() {
+        return mMatched;
+    }
+
+    public long getBodySize() {
+        return mBodySize;
+    }
+
+    public byte[] getBodyDigest() {
+        return mBodyDigest.clone();
+    }
+
+    /**
+     * Retrieves the prefix of the body as a string.
+     *
+     * @return Body prefix.
+     */
+    public String getBodyPrefix() {
+        return new String(mBodyPrefix, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Determines whether the entire body of this request has been kept as body prefix.
+     *
+     * @return True if body prefix is entire body, false otherwise.
+     */
+    public boolean isBodyComplete() {
+        return mBodyPrefix.length == mBodySize;
+    }
+
+    /**
+     * Creates a WireMock logged request from this request, so that it can be matched
+     * against WireMock request patterns.
+     * The body of the logged request is the body prefix if it contains the entire body,
+     * otherwise the body is empty. Cookies are not available.
+     *
+     * @return Logged request.
+     */
+    public LoggedRequest toLoggedRequest() {
+        final ObjectNode theRequestNode = OBJECT_MAPPER.createObjectNode()
+            .put("url", mUrl)
+            .put("absoluteUrl", mAbsoluteUrl)
+            .put("method", mMethod)
+            .put("bodyAsBase64", isBodyComplete() ? Base64.getEncoder().encodeToString(mBodyPrefix) : "");
+        theRequestNode.putObject("cookies");
+        final ObjectNode theHeadersNode = theRequestNode.putObject("headers");
+        for (final Map.Entry<String, List<String>> theHeader : mHeaders.entrySet()) {
+            final ArrayNode theValuesNode = theHeadersNode.putArray(theHeader.getKey());
+            theHeader.getValue().forEach(theValuesNode::add);
+        }
+        return Json.read(theRequestNode.toString(), LoggedRequest.class);
+    }
+
+    /**
+     * Determines whether the body of this request equals the supplied body, by comparing
+     * size and digest.
+     *
+     * @param inBody Body to compare with.
+     * @return True if bodies are equal, false otherwise.
+     */
+    public boolean bodyEquals(final byte[] inBody) {
+        return inBody.length == mBodySize && Arrays.equals(mBodyDigest, digest(inBody));
+    }
+
+    /**
+     * Determines whether the body of this request equals the supplied UTF-8 body.
+     *
+     * @param inBody Body to compare with.
+     * @return True if bodies are equal, false otherwise.
+     */
+    public boolean bodyEquals(final String inBody) {
+        return bodyEquals(inBody.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public String toString() {
+        return mMethod + " " + mUrl + " (matched: " + mMatched + ", body size: " + mBodySize
+            + ", body prefix: \"" + getBodyPrefix() + "\", headers: " + mHeaders + ")";
+    }
+}
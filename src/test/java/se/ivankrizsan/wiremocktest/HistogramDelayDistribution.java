@@ -0,0 +1,222 @@
+package se.ivankrizsan.wiremocktest;
+
+import com.github.tomakehurst.wiremock.http.DelayDistribution;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * WireMock delay distribution that samples delays from a recorded latency histogram.
+ * Two histogram formats are understood:
+ * <ul>
+ *     <li>CSV with one "percentile,latency" pair per line, where the percentile is
+ *     in the range 0-100 and the latency is in milliseconds.</li>
+ *     <li>The percentile distribution text written by HdrHistogram's
+ *     {@code outputPercentileDistribution}, where the first column is the latency
+ *     in milliseconds and the second column the percentile as a fraction 0-1.
+ *     Output scaled to other units must be rescaled to milliseconds, and HdrHistogram
+ *     interval logs ({@code .hlog}) are not understood.</li>
+ * </ul>
+ * Lines that are empty or start with a "#" are ignored, as are header lines not starting
+ * with a digit.
+ * When the distribution is created, the histogram is expanded into a fixed-size table
+ * of quantiles, interpolating linearly between the recorded percentiles. Sampling a delay
+ * picks a random entry in the table, which does not allocate any objects.
+ * Random numbers are thread-local. If a seed is supplied, each thread that samples the
+ * distribution gets its own random number generator seeded with the seed plus the
+ * order in which the thread first sampled, which makes single-threaded tests reproducible.
+ * Note that stub mappings using this delay distribution cannot be serialized to JSON, since
+ * WireMock only knows how to serialize its own delay distributions. Such stub mappings can
+ * thus not be sent over the admin API, for instance to followers using {@code HttpAdminClient},
+ * and listing them using {@code GET /__admin/mappings} fails.
+ *
+ * @author Ivan Krizsan
+ */
+public class HistogramDelayDistribution implements DelayDistribution {
+    /* Constant(s): */
+    private static final Logger LOGGER = LoggerFactory.getLogger(HistogramDelayDistribution.class);
+    /** Number of quantiles in the table from which delays are sampled. */
+    protected static final int QUANTILE_TABLE_SIZE = 4096;
+
+    /* Instance variable(s): */
+    protected final long[] mQuantileTable;
+    /** Random number generators if seeded, null if using {@code ThreadLocalRandom}. */
+    protected final ThreadLocal<Random> mSeededRandom;
+
+    /**
+     * Creates a delay distribution sampling from the supplied quantile table.
+     *
+     * @param inQuantileTable Delays, in milliseconds, ordered by quantile.
+     * @param inSeed Seed for random number generators, or null if not to be seeded.
+     */
+    protected HistogramDelayDistribution(final long[] inQuantileTable, final Long inSeed) {
+        mQuantileTable = inQuantileTable;
+        if (inSeed != null) {
+            final AtomicLong theThreadCounter = new AtomicLong();
+            final long theSeed = inSeed;
+            mSeededRandom = ThreadLocal.withInitial(
+                () -> new Random(theSeed + theThreadCounter.getAndIncrement()));
+        } else {
+            mSeededRandom = null;
+        }
+    }
+
+    /**
+     * Creates a delay distribution from a histogram file located on the classpath.
+     *
+     * @param inClasspathLocation Location of histogram file on the classpath.
+     * @param inSeed Seed for random number generators, or null if not to be seeded.
+     * @return New delay distribution.
+     * @throws IOException If error occurs reading the histogram file.
+     */
+    public static HistogramDelayDistribution fromClasspath(final String inClasspathLocation,
+        final Long inSeed) throws IOException {
+        final InputStream theHistogramStream =
+            HistogramDelayDistribution.class.getClassLoader().getResourceAsStream(inClasspathLocation);
+        if (theHistogramStream == null) {
+            throw new IOException("Histogram file not found on classpath: " + inClasspathLocation);
+        }
+        try (Reader theReader = new InputStreamReader(theHistogramStream, StandardCharsets.UTF_8)) {
+            return fromReader(theReader, inSeed);
+        }
+    }
+
+    /**
+     * Creates a delay distribution from a histogram file in the file system.
+     *
+     * @param inHistogramFile Histogram file.
+     * @param inSeed Seed for random number generators, or null if not to be seeded.
+     * @return New delay distribution.
+     * @throws IOException If error occurs reading the histogram file.
+     */
+    public static HistogramDelayDistribution fromFile(final Path inHistogramFile, final Long inSeed)
+        throws IOException {
+        try (Reader theReader = Files.newBufferedReader(inHistogramFile, StandardCharsets.UTF_8)) {
+            return fromReader(theReader, inSeed);
+        }
+    }
+
+    /**
+     * Creates a delay distribution from histogram data read from the supplied reader.
+     *
+     * @param inReader Reader from which to read the histogram data. Not closed.
+     * @param inSeed Seed for random number generators, or null if not to be seeded.
+     * @return New delay distribution.
+     * @throws IOException If error occurs reading or if the histogram data is malformed.
+     */
+    public static HistogramDelayDistribution fromReader(final Reader inReader, final Long inSeed)
+        throws IOException {
+        final List<double[]> thePercentilePoints = parseHistogram(new BufferedReader(inReader));
+        if (thePercentilePoints.isEmpty()) {
+            throw new IOException("Histogram contains no percentiles");
+        }
+        thePercentilePoints.sort((inFirst, inSecond) -> Double.compare(inFirst[0], inSecond[0]));
+        LOGGER.debug("Loaded latency histogram with {} percentiles", thePercentilePoints.size());
+
+        return new HistogramDelayDistribution(createQuantileTable(thePercentilePoints), inSeed);
+    }
+
+    @Override
+    public long sampleMillis() {
+        final int theIndex = mSeededRandom != null
+            ? mSeededRandom.get().nextInt(mQuantileTable.length)
+            : ThreadLocalRandom.current().nextInt(mQuantileTable.length);
+        return mQuantileTable[theIndex];
+    }
+
+    /**
+     * Retrieves the delay at the supplied quantile of the distribution.
+     *
+     * @param inQuantile Quantile in the range 0-1.
+     * @return Delay in milliseconds.
+     */
+    public long quantileMillis(final double inQuantile) {
+        final int theIndex = (int) Math.min(
+            mQuantileTable.length - 1, Math.max(0, Math.round(inQuantile * mQuantileTable.length - 0.5)));
+        return mQuantileTable[theIndex];
+    }
+
+    /**
+     * Parses the percentile and latency pairs in histogram data.
+     * Each pair is represented by an array in which the first element is the percentile
+     * as a fraction 0-1 and the second element is the latency in milliseconds.
+     *
+     * @param inReader Reader from which to read the histogram data.
+     * @return Percentile and latency pairs in the order they appear in the histogram.
+     * @throws IOException If error occurs reading or if the histogram data is malformed.
+     */
+    protected static List<double[]> parseHistogram(final BufferedReader inReader) throws IOException {
+        final List<double[]> thePercentilePoints = new ArrayList<>();
+        String theLine;
+        int theLineNumber = 0;
+        while ((theLine = inReader.readLine()) != null) {
+            theLineNumber++;
+            theLine = theLine.trim();
+            if (theLine.isEmpty() || theLine.startsWith("#") || !Character.isDigit(theLine.charAt(0))) {
+                continue;
+            }
+
+            try {
+                if (theLine.contains(",")) {
+                    /* CSV format: percentile (0-100), latency. */
+                    final String[] theColumns = theLine.split("\\s*,\\s*");
+                    thePercentilePoints.add(new double[] {
+                        Double.parseDouble(theColumns[0]) / 100.0, Double.parseDouble(theColumns[1])});
+                } else {
+                    /* HdrHistogram percentile distribution format: latency, percentile (0-1), ... */
+                    final String[] theColumns = theLine.split("\\s+");
+                    thePercentilePoints.add(new double[] {
+                        Double.parseDouble(theColumns[1]), Double.parseDouble(theColumns[0])});
+                }
+            } catch (final NumberFormatException | ArrayIndexOutOfBoundsException theException) {
+                throw new IOException("Malformed histogram line " + theLineNumber + ": " + theLine,
+                    theException);
+            }
+        }
+        return thePercentilePoints;
+    }
+
+    /**
+     * Expands the supplied percentile and latency pairs into a table of latencies
+     * at evenly spaced quantiles, interpolating linearly between the pairs.
+     *
+     * @param inPercentilePoints Percentile and latency pairs ordered by percentile.
+     * @return Quantile table.
+     */
+    protected static long[] createQuantileTable(final List<double[]> inPercentilePoints) {
+        final long[] theQuantileTable = new long[QUANTILE_TABLE_SIZE];
+        int theSegment = 0;
+        for (int i = 0; i < QUANTILE_TABLE_SIZE; i++) {
+            final double theQuantile = (i + 0.5) / QUANTILE_TABLE_SIZE;
+            while (theSegment < inPercentilePoints.size() - 1
+                && inPercentilePoints.get(theSegment + 1)[0] < theQuantile) {
+                theSegment++;
+            }
+
+            final double[] theLower = inPercentilePoints.get(theSegment);
+            final double theLatency;
+            if (theQuantile <= theLower[0] || theSegment == inPercentilePoints.size() - 1) {
+                theLatency = theLower[1];
+            } else {
+                final double[] theUpper = inPercentilePoints.get(theSegment + 1);
+                final double theFraction = (theQuantile - theLower[0]) / (theUpper[0] - theLower[0]);
+                theLatency = theLower[1] + theFraction * (theUpper[1] - theLower[1]);
+            }
+            theQuantileTable[i] = Math.round(theLatency);
+        }
+        return theQuantileTable;
+    }
+}
@@ -0,0 +1,163 @@
+package se.ivankrizsan.wiremocktest;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import io.restassured.RestAssured;
+import io.restassured.http.ContentType;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+
+import java.util.Arrays;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+
+/**
+ * Examples on how to make WireMock respond with delays sampled from a recorded
+ * latency histogram, as opposed to a fixed delay.
+ *
+ * @author Ivan Krizsan
+ */
+public class HistogramDelayDistributionTests extends AbstractTestBase {
+    /* Constant(s): */
+    protected static final String CSV_HISTOGRAM_LOCATION = "latency/downstream-latency.csv";
+    protected static final String HDR_HISTOGRAM_LOCATION = "latency/downstream-latency.hdr";
+    protected static final long SEED = 4711L;
+    protected static final int SAMPLE_COUNT = 100_000;
+
+    /* Instance variable(s): */
+    protected WireMockServer mWireMockServer;
+
+    /**
+     * Performs cleanup after each test.
+     */
+    @After
+    public void tearDown() {
+        if (mWireMockServer != null) {
+            mWireMockServer.stop();
+        }
+    }
+
+    /**
+     * Tests sampling delays from a histogram in the CSV format.
+     *
+     * Expected result: The sampled delays should reproduce the percentiles
+     * in the histogram file.
+     *
+     * @throws Exception If error occurs loading histogram.
+     */
+    @Test
+    public void csvHistogramPercentilesTest() throws Exception {
+        final HistogramDelayDistribution theDistribution =
+            HistogramDelayDistribution.fromClasspath(CSV_HISTOGRAM_LOCATION, SEED);
+
+        final long[] theSamples = new long[SAMPLE_COUNT];
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            theSamples[i] = theDistribution.sampleMillis();
+        }
+        Arrays.sort(theSamples);
+
+        Assert.assertTrue("Minimum sampled delay should not be below histogram minimum",
+            theSamples[0] >= 12);
+        Assert.assertTrue("Maximum sampled delay should not exceed histogram maximum",
+            theSamples[SAMPLE_COUNT - 1] <= 900);
+        Assert.assertEquals("Median delay should match histogram median",
+            31.0, theSamples[SAMPLE_COUNT / 2], 2.0);
+        Assert.assertEquals("99th percentile delay should match histogram",
+            310.0, theSamples[SAMPLE_COUNT * 99 / 100], 20.0);
+    }
+
+    /**
+     * Tests loading the same latency distribution from a CSV file and from
+     * a HdrHistogram percentile distribution file.
+     *
+     * Expected result: Both distributions should have the same quantiles.
+     *
+     * @throws Exception If error occurs loading histograms.
+     */
+    @Test
+    public void hdrHistogramEqualsCsvHistogramTest() throws Exception {
+        final HistogramDelayDistribution theCsvDistribution =
+            HistogramDelayDistribution.fromClasspath(CSV_HISTOGRAM_LOCATION, null);
+        final HistogramDelayDistribution theHdrDistribution =
+            HistogramDelayDistribution.fromClasspath(HDR_HISTOGRAM_LOCATION, null);
+
+        for (final double theQuantile : new double[] {0.0, 0.25, 0.5, 0.9, 0.99, 0.999, 1.0}) {
+            Assert.assertEquals("Quantile " + theQuantile + " should be equal",
+                theCsvDistribution.quantileMillis(theQuantile),
+                theHdrDistribution.quantileMillis(theQuantile));
+        }
+    }
+
+    /**
+     * Tests sampling two distributions created with the same seed.
+     *
+     * Expected result: The two distributions should produce the same sequence of delays.
+     *
+     * @throws Exception If error occurs loading histogram.
+     */
+    @Test
+    public void seededSamplingIsReproducibleTest() throws Exception {
+        final HistogramDelayDistribution theFirstDistribution =
+            HistogramDelayDistribution.fromClasspath(CSV_HISTOGRAM_LOCATION, SEED);
+        final HistogramDelayDistribution theSecondDistribution =
+            HistogramDelayDistribution.fromClasspath(CSV_HISTOGRAM_LOCATION, SEED);
+
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals("Delay sample " + i + " should be equal",
+                theFirstDistribution.sampleMillis(), theSecondDistribution.sampleMillis());
+        }
+    }
+
+    /**
+     * Tests sending a request to the mock server which will respond with a delay
+     * sampled from a recorded latency histogram.
+     *
+     * Expected result: A response should be received after a delay that is at least
+     * the minimum latency in the histogram.
+     *
+     * @throws Exception If error occurs loading histogram.
+     */
+    @Test
+    public void histogramDelayedResponseTest() throws Exception {
+        final HistogramDelayDistribution theDistribution =
+            HistogramDelayDistribution.fromClasspath(CSV_HISTOGRAM_LOCATION, SEED);
+        initializeRestAssuredHttp();
+        mWireMockServer = new WireMockServer(HTTP_ENDPOINT_PORT);
+        mWireMockServer.start();
+
+        /*
+         * Setup test HTTP mock as to expect requests to /wiremock/test with an Accept
+         * header that has the value "text/plain".
+         * Each response is delayed by a delay sampled from the latency histogram.
+         */
+        mWireMockServer.stubFor(
+            get(urlEqualTo(BASE_PATH))
+                .withHeader(HttpHeaders.ACCEPT, equalTo(MediaType.TEXT_PLAIN_VALUE))
+                .willReturn(
+                    aResponse()
+                        .withStatus(HttpStatus.OK.value())
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_PLAIN_VALUE)
+                        .withBody("Hello client, this is the response body.")
+                        .withRandomDelay(theDistribution)
+                )
+        );
+
+        for (int i = 0; i < 5; i++) {
+            RestAssured
+                .given()
+                .accept(ContentType.TEXT)
+                .when()
+                .get(BASE_HTTP_URL)
+                .then()
+                .time(greaterThanOrEqualTo(theDistribution.quantileMillis(0.0)))
+                .statusCode(HttpStatus.OK.value());
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package se.ivankrizsan.wiremocktest;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import io.restassured.RestAssured;
+import io.restassured.http.ContentType;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static io.restassured.config.XmlConfig.xmlConfig;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.hasXPath;
+
+/**
+ * Examples on how to memoize rendered response templates, so that requests that
+ * supply the same values to a template are served without rendering the template again.
+ *
+ * @author Ivan Krizsan
+ */
+public class MemoizingResponseTemplateTests extends AbstractTestBase {
+    /* Constant(s): */
+    protected static final String TESTFILES_BASE = "se/ivankrizsan/wiremocktest/";
+    protected static final long MAX_CACHE_BYTES = 1024 * 1024;
+
+    /* Instance variable(s): */
+    protected WireMockServer mWireMockServer;
+
+    /**
+     * Performs cleanup after each test.
+     */
+    @After
+    public void tearDown() {
+        if (mWireMockServer != null) {
+            mWireMockServer.stop();
+        }
+    }
+
+    /**
+     * Tests sending requests with the same exchange rate header, and thus the same
+     * template input, as well as a request with a different exchange rate.
+     *
+     * Expected result: The template should only be rendered for the first request with
+     * each exchange rate, while repeated requests should be served the cached response.
+     */
+    @Test
+    public void memoizedResponseTemplateTest() {
+        final MemoizingResponseTemplateTransformer theTransformer =
+            startServerWithTransformer(MAX_CACHE_BYTES);
+        stubSoapResponse();
+
+        sendExchangeRateRequest("4.123");
+        sendExchangeRateRequest("4.123");
+        sendExchangeRateRequest("4.123");
+        sendExchangeRateRequest("9.876");
+
+        Assert.assertEquals("Template should be rendered once per exchange rate",
+            2, theTransformer.getMissCount());
+        Assert.assertEquals("Repeated requests should be served cached responses",
+            2, theTransformer.getHitCount());
+    }
+
+    /**
+     * Tests sending requests for a template reading a query parameter and a path segment,
+     * where the requests have different values of other request attributes.
+     *
+     * Expected result: Requests should only be rendered when the query parameter or path
+     * segment changes, since the template reads no other request attributes.
+     */
+    @Test
+    public void memoizationKeyedByReadAttributesTest() {
+        final MemoizingResponseTemplateTransformer theTransformer =
+            startServerWithTransformer(MAX_CACHE_BYTES);
+        mWireMockServer.stubFor(
+            get(urlPathEqualTo(BASE_PATH + "/rates"))
+                .willReturn(
+                    aResponse()
+                        .withStatus(HttpStatus.OK.value())
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_PLAIN_VALUE)
+                        .withBody("{{request.path.[2]}} in {{request.query.currency}}")
+                        .withTransformers(MemoizingResponseTemplateTransformer.TRANSFORMER_NAME)
+                )
+        );
+
+        final String[] theQueries = {"?currency=SEK", "?currency=SEK&unread=1", "?currency=EUR"};
+        final String[] theExpectedBodies = {"rates in SEK", "rates in SEK", "rates in EUR"};
+        for (int i = 0; i < theQueries.length; i++) {
+            final String theBody = RestAssured
+                .given()
+                .accept(ContentType.TEXT)
+                .header("unread-header", Integer.toString(i))
+                .when()
+                .get(BASE_PATH + "/rates" + theQueries[i])
+                .asString();
+            Assert.assertEquals("Response body should contain path segment and query parameter",
+                theExpectedBodies[i], theBody);
+        }
+
+        Assert.assertEquals("Template should be rendered once per currency", 2, theTransformer.getMissCount());
+        Assert.assertEquals("Request differing only in unread attributes should hit cache",
+            1, theTransformer.getHitCount());
+    }
+
+    /**
+     * Tests sending requests with many different exchange rates to a server whose
+     * memoization cache only has room for a few responses.
+     *
+     * Expected result: The least recently used responses should be evicted and the size
+     * of the cache should never exceed its bound.
+     */
+    @Test
+    public void boundedCacheEvictionTest() {
+        final long theMaxCacheBytes = 2048;
+        final MemoizingResponseTemplateTransformer theTransformer =
+            startServerWithTransformer(theMaxCacheBytes);
+        stubSoapResponse();
+
+        for (int i = 0; i < 10; i++) {
+            sendExchangeRateRequest("1." + i);
+            Assert.assertTrue("Cache size should not exceed its bound",
+                theTransformer.getCacheBytes() <= theMaxCacheBytes);
+        }
+
+        Assert.assertTrue("Responses should have been evicted", theTransformer.getEvictionCount() > 0);
+        Assert.assertEquals("Every request should have been rendered", 10, theTransformer.getMissCount());
+    }
+
+    /**
+     * Tests a template that reads all the request headers, which cannot be memoized
+     * by the request attributes it reads.
+     *
+     * Expected result: The template should be rendered for every request and nothing
+     * should be cached.
+     */
+    @Test
+    public void nonMemoizableTemplateTest() {
+        final MemoizingResponseTemplateTransformer theTransformer =
+            startServerWithTransformer(MAX_CACHE_BYTES);
+        mWireMockServer.stubFor(
+            get(urlEqualTo(BASE_PATH))
+                .willReturn(
+                    aResponse()
+                        .withStatus(HttpStatus.OK.value())
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_PLAIN_VALUE)
+                        .withBody("Headers: {{request.headers}}")
+                        .withTransformers(MemoizingResponseTemplateTransformer.TRANSFORMER_NAME)
+                )
+        );
+
+        for (int i = 0; i < 3; i++) {
+            RestAssured
+                .given()
+                .accept(ContentType.TEXT)
+                .when()
+                .get(BASE_PATH)
+                .then()
+                .statusCode(HttpStatus.OK.value());
+        }
+
+        Assert.assertEquals("Nothing should be cached", 0, theTransformer.getCacheBytes());
+        Assert.assertEquals("No request should be served from cache", 0, theTransformer.getHitCount());
+    }
+
+    /**
+     * Tests a template that reads a request header inside a "with" block on the request,
+     * in which the header is not referenced as a request attribute, using requests with
+     * two different header values.
+     *
+     * Expected result: The template should not be memoized, so each response should
+     * contain the header value of its request.
+     */
+    @Test
+    public void requestWithBlockTemplateNotMemoizedTest() {
+        Assert.assertNull("Template looking up request attribute should not be memoized",
+            MemoizingResponseTemplateTransformer.findRequestAttributes("{{lookup request 'url'}}"));
+
+        final MemoizingResponseTemplateTransformer theTransformer =
+            startServerWithTransformer(MAX_CACHE_BYTES);
+        mWireMockServer.stubFor(
+            get(urlEqualTo(BASE_PATH))
+                .willReturn(
+                    aResponse()
+                        .withStatus(HttpStatus.OK.value())
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_PLAIN_VALUE)
+                        .withBody("Rate: {{#with request}}{{headers.exchangerate}}{{/with}}")
+                        .withTransformers(MemoizingResponseTemplateTransformer.TRANSFORMER_NAME)
+                )
+        );
+
+        for (final String theExchangeRate : new String[] {"4.123", "9.876"}) {
+            final String theBody = RestAssured
+                .given()
+                .accept(ContentType.TEXT)
+                .header("exchangerate", theExchangeRate)
+                .when()
+                .get(BASE_PATH)
+                .asString();
+            Assert.assertEquals("Response body should contain exchange rate of request",
+                "Rate: " + theExchangeRate, theBody);
+        }
+
+        Assert.assertEquals("Nothing should be cached", 0, theTransformer.getCacheBytes());
+        Assert.assertEquals("No request should be served from cache", 0, theTransformer.getHitCount());
+    }
+
+    /**
+     * Tests templates using non-deterministic helpers in a triple-stash mustache and
+     * in a subexpression.
+     *
+     * Expected result: Neither template should be memoized, so each request should
+     * receive a newly generated random value.
+     */
+    @Test
+    public void nonDeterministicHelperTemplatesNotMemoizedTest() {
+        Assert.assertNull("Template with helper in subexpression should not be memoized",
+            MemoizingResponseTemplateTransformer.findRequestAttributes(
+                "{{capitalize (randomValue length=5)}} {{request.headers.exchangerate}}"));
+
+        final MemoizingResponseTemplateTransformer theTransformer =
+            startServerWithTransformer(MAX_CACHE_BYTES);
+        mWireMockServer.stubFor(
+            get(urlEqualTo(BASE_PATH))
+                .willReturn(
+                    aResponse()
+                        .withStatus(HttpStatus.OK.value())
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_PLAIN_VALUE)
+                        .withBody("{{{randomValue length=32 type='ALPHANUMERIC'}}}")
+                        .withTransformers(MemoizingResponseTemplateTransformer.TRANSFORMER_NAME)
+                )
+        );
+
+        final Set<String> theResponseBodies = new HashSet<>();
+        for (int i = 0; i < 3; i++) {
+            theResponseBodies.add(RestAssured
+                .given()
+                .accept(ContentType.TEXT)
+                .when()
+                .get(BASE_PATH)
+                .then()
+                .statusCode(HttpStatus.OK.value())
+                .extract()
+                .asString());
+        }
+
+        Assert.assertEquals("Each request should receive a new random value", 3, theResponseBodies.size());
+        Assert.assertEquals("No request should be served from cache", 0, theTransformer.getHitCount());
+    }
+
+    /**
+     * Starts a WireMock server with a memoizing response template transformer.
+     *
+     * @param inMaxCacheBytes Maximum size of memoization cache in bytes.
+     * @return Memoizing response template transformer.
+     */
+    protected MemoizingResponseTemplateTransformer startServerWithTransformer(final long inMaxCacheBytes) {
+        initializeRestAssuredHttp();
+        final MemoizingResponseTemplateTransformer theTransformer =
+            new MemoizingResponseTemplateTransformer(inMaxCacheBytes);
+        mWireMockServer = new WireMockServer(
+            WireMockConfiguration
+                .options()
+                .port(HTTP_ENDPOINT_PORT)
+                .extensions(theTransformer));
+        mWireMockServer.start();
+        return theTransformer;
+    }
+
+    /**
+     * Sets up the stub mapping responding with the SOAP response template, into which
+     * the value of the request HTTP header "exchangerate" is inserted.
+     */
+    protected void stubSoapResponse() {
+        mWireMockServer.stubFor(
+            get(urlEqualTo(BASE_PATH))
+                .withHeader(HttpHeaders.ACCEPT, equalTo(MediaType.APPLICATION_XML_VALUE))
+                .willReturn(
+                    aResponse()
+                        .withBodyFile(TESTFILES_BASE + "soap-response.xml")
+                        .withTransformers(MemoizingResponseTemplateTransformer.TRANSFORMER_NAME)
+                        .withStatus(HttpStatus.OK.value())
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_XML_VALUE)
+                )
+        );
+    }
+
+    /**
+     * Sends a request for the SOAP response with the supplied exchange rate and verifies
+     * that the response contains the exchange rate.
+     *
+     * @param inExchangeRate Exchange rate.
+     */
+    protected void sendExchangeRateRequest(final String inExchangeRate) {
+        RestAssured
+            .given()
+            .config(RestAssured.config().xmlConfig(xmlConfig().with().namespaceAware(false)))
+            .accept(MediaType.APPLICATION_XML_VALUE)
+            .header("exchangerate", inExchangeRate)
+            .when()
+            .get(BASE_HTTP_URL)
+            .then()
+            .statusCode(HttpStatus.OK.value())
+            .body(
+                hasXPath(
+                    "/Envelope/Body/ConversionRateResponse/ConversionRateResult",
+                    containsString(inExchangeRate))
+            );
+    }
+}
@@ -0,0 +1,427 @@
+package se.ivankrizsan.wiremocktest;
+
+import com.github.tomakehurst.wiremock.common.FileSource;
+import com.github.tomakehurst.wiremock.extension.Parameters;
+import com.github.tomakehurst.wiremock.extension.ResponseDefinitionTransformer;
+import com.github.tomakehurst.wiremock.extension.responsetemplating.ResponseTemplateTransformer;
+import com.github.tomakehurst.wiremock.http.Request;
+import com.github.tomakehurst.wiremock.http.ResponseDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Response template transformer that memoizes rendered responses.
+ * Stub mappings opt into memoization by using this transformer instead of the regular
+ * response template transformer.
+ * The template of a response is examined to find the request attributes it reads,
+ * that is named headers, query parameters, cookies and path segments as well as the
+ * URL, the path and the body of the request. Rendered responses are cached using
+ * the values of these attributes as key, so a request for which all the read attributes
+ * are equal to those of an earlier request is served the cached response without
+ * rendering the template.
+ * Templates that read request attributes in other ways, for instance iterating over all
+ * request headers or reading attributes of the request in a "with" block or using "lookup",
+ * or that use helpers that do not produce the same result each time, are always rendered.
+ * The cache is bounded by the total size, in bytes, of the rendered response bodies
+ * and evicts the least recently used responses when full.
+ *
+ * @author Ivan Krizsan
+ */
+public class MemoizingResponseTemplateTransformer extends ResponseDefinitionTransformer {
+    /* Constant(s): */
+    private static final Logger LOGGER = LoggerFactory.getLogger(MemoizingResponseTemplateTransformer.class);
+    public static final String TRANSFORMER_NAME = "memoizing-response-template";
+    /** Matches references to request attributes in templates. */
+    protected static final Pattern REQUEST_ATTRIBUTE_PATTERN =
+        Pattern.compile("request\\.(\\w+)((?:\\.\\[\\d+\\]|\\.[\\w-]+)?)");
+    /**
+     * Matches references to the request object, anywhere inside a mustache, that are not
+     * followed by a request attribute, for instance "{{#with request}}" or "{{lookup request 'url'}}".
+     */
+    protected static final Pattern BARE_REQUEST_PATTERN =
+        Pattern.compile("\\{\\{[^}]*\\brequest\\b(?!\\.\\w)");
+    /**
+     * Matches use of helpers that produce a different result each time they are rendered,
+     * anywhere inside a mustache, including triple-stash mustaches and subexpressions.
+     */
+    protected static final Pattern NON_DETERMINISTIC_HELPER_PATTERN =
+        Pattern.compile("\\{\\{[^}]*\\b(now|randomValue)\\b");
+    /** Approximate size of a cache entry in addition to the response body. */
+    protected static final int ENTRY_OVERHEAD_BYTES = 128;
+
+    /* Instance variable(s): */
+    protected final ResponseTemplateTransformer mTemplateTransformer = new ResponseTemplateTransformer(false);
+    protected final long mMaxCacheBytes;
+    protected final Map<String, Optional<List<String>>> mTemplateAttributes = new ConcurrentHashMap<>();
+    protected final LinkedHashMap<MemoKey, ResponseDefinition> mCache = new LinkedHashMap<>(16, 0.75f, true);
+    protected long mCacheBytes;
+    protected long mHitCount;
+    protected long mMissCount;
+    protected long mEvictionCount;
+
+    /**
+     * Creates a memoizing response template transformer with a cache bounded to
+     * the supplied number of bytes.
+     *
+     * @param inMaxCacheBytes Maximum total size of cached responses in bytes.
+     */
+    public MemoizingResponseTemplateTransformer(final long inMaxCacheBytes) {
+        mMaxCacheBytes = inMaxCacheBytes;
+    }
+
+    @Override
+    public ResponseDefinition transform(final Request inRequest, final ResponseDefinition inResponseDefinition,
+        final FileSource inFileSource, final Parameters inParameters) {
+        if (inResponseDefinition.specifiesBinaryBodyContent()) {
+            return mTemplateTransformer.transform(inRequest, inResponseDefinition, inFileSource, inParameters);
+        }
+        final String theTemplateKey = (inResponseDefinition.specifiesBodyFile()
+            ? "file:" + inResponseDefinition.getBodyFileName()
+            : "body:" + inResponseDefinition.getBody())
+            + "\n" + inResponseDefinition.getHeaders();
+        final Optional<List<String>> theAttributes = mTemplateAttributes.computeIfAbsent(theTemplateKey,
+            theKey -> Optional.ofNullable(findRequestAttributes(readTemplate(inResponseDefinition, inFileSource))));
+        if (!theAttributes.isPresent()) {
+            return mTemplateTransformer.transform(inRequest, inResponseDefinition, inFileSource, inParameters);
+        }
+
+        final MemoKey theKey = new MemoKey(inResponseDefinition, inParameters,
+            readRequestAttributes(inRequest, theAttributes.get()));
+        synchronized (mCache) {
+            final ResponseDefinition theCachedResponse = mCache.get(theKey);
+            if (theCachedResponse != null) {
+                mHitCount++;
+                return theCachedResponse;
+            }
+            mMissCount++;
+        }
+
+        final ResponseDefinition theRenderedResponse =
+            mTemplateTransformer.transform(inRequest, inResponseDefinition, inFileSource, inParameters);
+        cache(theKey, theRenderedResponse);
+        return theRenderedResponse;
+    }
+
+    @Override
+    public boolean applyGlobally() {
+        return false;
+    }
+
+    @Override
+    public String getName() {
+        return TRANSFORMER_NAME;
+    }
+
+    /**
+     * Retrieves the number of requests served a cached response.
+     *
+     * @return Cache hit count.
+     */
+    public long getHitCount() {
+        synchronized (mCache) {
+            return mHitCount;
+        }
+    }
+
+    /**
+     * Retrieves the number of memoizable requests for which the response had to be rendered.
+     *
+     * @return Cache miss count.
+     */
+    public long getMissCount() {
+        synchronized (mCache) {
+            return mMissCount;
+        }
+    }
+
+    /**
+     * Retrieves the number of responses evicted from the cache.
+     *
+     * @return Eviction count.
+     */
+    public long getEvictionCount() {
+        synchronized (mCache) {
+            return mEvictionCount;
+        }
+    }
+
+    /**
+     * Retrieves the current total size of the cached responses.
+     *
+     * @return Cache size in bytes.
+     */
+    public long getCacheBytes() {
+        synchronized (mCache) {
+            return mCacheBytes;
+        }
+    }
+
+    /**
+     * Clears the cache of rendered responses.
+     */
+    public void clear() {
+        synchronized (mCache) {
+            mCache.clear();
+            mCacheBytes = 0;
+        }
+    }
+
+    /**
+     * Adds the supplied rendered response to the cache, evicting least recently used
+     * responses if the cache becomes full.
+     * Responses larger than the entire cache are not cached.
+     *
+     * @param inKey Key of response.
+     * @param inRenderedResponse Rendered response.
+     */
+    protected void cache(final MemoKey inKey, final ResponseDefinition inRenderedResponse) {
+        final long theEntryBytes = entryBytes(inKey, inRenderedResponse);
+        if (theEntryBytes > mMaxCacheBytes) {
+            return;
+        }
+
+        synchronized (mCache) {
+            final ResponseDefinition thePreviousResponse = mCache.put(inKey, inRenderedResponse);
+            if (thePreviousResponse != null) {
+                mCacheBytes -= entryBytes(inKey, thePreviousResponse);
+            }
+            mCacheBytes += theEntryBytes;
+
+            final Iterator<Map.Entry<MemoKey, ResponseDefinition>> theEntries = mCache.entrySet().iterator();
+            while (mCacheBytes > mMaxCacheBytes && theEntries.hasNext()) {
+                final Map.Entry<MemoKey, ResponseDefinition> theEldestEntry = theEntries.next();
+                mCacheBytes -= entryBytes(theEldestEntry.getKey(), theEldestEntry.getValue());
+                theEntries.remove();
+                mEvictionCount++;
+            }
+        }
+    }
+
+    /**
+     * Calculates the approximate size of a cache entry.
+     *
+     * @param inKey Key of entry.
+     * @param inRenderedResponse Rendered response of entry.
+     * @return Size in bytes.
+     */
+    protected static long entryBytes(final MemoKey inKey, final ResponseDefinition inRenderedResponse) {
+        long theBytes = ENTRY_OVERHEAD_BYTES;
+        if (inRenderedResponse.getBody() != null) {
+            theBytes += inRenderedResponse.getBody().getBytes(StandardCharsets.UTF_8).length;
+        }
+        for (final String theAttributeValue : inKey.mAttributeValues) {
+            theBytes += theAttributeValue != null ? theAttributeValue.length() * 2 : 0;
+        }
+        return theBytes;
+    }
+
+    /**
+     * Reads the template of the supplied response definition, including its headers.
+     *
+     * @param inResponseDefinition Response definition without binary body.
+     * @param inFileSource File source holding body files.
+     * @return Template text.
+     */
+    protected static String readTemplate(final ResponseDefinition inResponseDefinition,
+        final FileSource inFileSource) {
+        final String theBody;
+        if (inResponseDefinition.specifiesBodyFile()) {
+            theBody = inFileSource.getTextFileNamed(inResponseDefinition.getBodyFileName()).readContentsAsString();
+        } else {
+            theBody = inResponseDefinition.getBody();
+        }
+        return theBody + "\n" + inResponseDefinition.getHeaders();
+    }
+
+    /**
+     * Finds the request attributes read by the supplied template.
+     * Attributes are represented as strings like "headers.exchangerate", "query.currency",
+     * "path.[2]", "url", "path" and "body".
+     *
+     * @param inTemplate Template text.
+     * @return Request attributes read by the template, or null if the template cannot
+     * be memoized.
+     */
+    protected static List<String> findRequestAttributes(final String inTemplate) {
+        final Matcher theHelperMatcher = NON_DETERMINISTIC_HELPER_PATTERN.matcher(inTemplate);
+        if (theHelperMatcher.find()) {
+            LOGGER.debug("Template using helper {} is not memoized", theHelperMatcher.group(1));
+            return null;
+        }
+        if (BARE_REQUEST_PATTERN.matcher(inTemplate).find()) {
+            LOGGER.debug("Template referencing the request without a request attribute is not memoized");
+            return null;
+        }
+
+        final List<String> theAttributes = new ArrayList<>();
+        final Matcher theMatcher = REQUEST_ATTRIBUTE_PATTERN.matcher(inTemplate);
+        while (theMatcher.find()) {
+            final String theObject = theMatcher.group(1);
+            final String theProperty = theMatcher.group(2).isEmpty() ? null : theMatcher.group(2).substring(1);
+            final boolean theNamedFlag = theProperty != null;
+            final boolean theRecognizedFlag;
+            switch (theObject) {
+                case "headers":
+                case "query":
+                case "cookies":
+                    theRecognizedFlag = theNamedFlag;
+                    break;
+                case "path":
+                    theRecognizedFlag = !theNamedFlag || theProperty.startsWith("[");
+                    break;
+                case "url":
+                case "body":
+                    theRecognizedFlag = !theNamedFlag;
+                    break;
+                default:
+                    theRecognizedFlag = false;
+            }
+            if (!theRecognizedFlag) {
+                LOGGER.debug("Template reading request attribute {} is not memoized", theMatcher.group());
+                return null;
+            }
+
+            final String theAttribute = theNamedFlag ? theObject + "." + theProperty : theObject;
+            if (!theAttributes.contains(theAttribute)) {
+                theAttributes.add(theAttribute);
+            }
+        }
+        return Collections.unmodifiableList(theAttributes);
+    }
+
+    /**
+     * Reads the values of the supplied attributes from the supplied request.
+     *
+     * @param inRequest Request.
+     * @param inAttributes Attributes to read, as found by {@code findRequestAttributes}.
+     * @return Attribute values in the same order as the attributes.
+     */
+    protected static List<String> readRequestAttributes(final Request inRequest, final List<String> inAttributes) {
+        final String theUrl = inRequest.getUrl();
+        final int theQueryStart = theUrl.indexOf('?');
+        final String thePath = theQueryStart >= 0 ? theUrl.substring(0, theQueryStart) : theUrl;
+        final String theQuery = theQueryStart >= 0 ? theUrl.substring(theQueryStart + 1) : "";
+
+        final List<String> theValues = new ArrayList<>(inAttributes.size());
+        for (final String theAttribute : inAttributes) {
+            final int theDotIndex = theAttribute.indexOf('.');
+            final String theObject = theDotIndex >= 0 ? theAttribute.substring(0, theDotIndex) : theAttribute;
+            final String theName = theDotIndex >= 0 ? theAttribute.substring(theDotIndex + 1) : null;
+            switch (theObject) {
+                case "headers":
+                    theValues.add(inRequest.containsHeader(theName)
+                        ? String.valueOf(inRequest.header(theName).values())
+                        : null);
+                    break;
+                case "query":
+                    theValues.add(queryParameterValues(theQuery, theName));
+                    break;
+                case "cookies":
+                    theValues.add(inRequest.getHeader("Cookie"));
+                    break;
+                case "path":
+                    theValues.add(theName == null ? thePath : pathSegment(thePath, theName));
+                    break;
+                case "url":
+                    theValues.add(theUrl);
+                    break;
+                default:
+                    theValues.add(inRequest.getBodyAsString());
+            }
+        }
+        return theValues;
+    }
+
+    /**
+     * Retrieves all the raw values of the query parameter with the supplied name.
+     *
+     * @param inQuery Query string.
+     * @param inName Query parameter name.
+     * @return Query parameter values separated by "&amp;".
+     */
+    protected static String queryParameterValues(final String inQuery, final String inName) {
+        final StringBuilder theValues = new StringBuilder();
+        for (final String theParameter : inQuery.split("&")) {
+            final int theEqualsIndex = theParameter.indexOf('=');
+            final String theParameterName =
+                theEqualsIndex >= 0 ? theParameter.substring(0, theEqualsIndex) : theParameter;
+            if (theParameterName.equals(inName)) {
+                theValues.append(theEqualsIndex >= 0 ? theParameter.substring(theEqualsIndex + 1) : "").append('&');
+            }
+        }
+        return theValues.toString();
+    }
+
+    /**
+     * Retrieves the path segment with the supplied index.
+     *
+     * @param inPath Request path.
+     * @param inIndexProperty Index in the template property format, for instance "[2]".
+     * @return Path segment, or null if no path segment with the index.
+     */
+    protected static String pathSegment(final String inPath, final String inIndexProperty) {
+        final int theIndex = Integer.parseInt(inIndexProperty.substring(1, inIndexProperty.length() - 1));
+        final String[] theSegments = (inPath.startsWith("/") ? inPath.substring(1) : inPath).split("/");
+        return theIndex < theSegments.length ? theSegments[theIndex] : null;
+    }
+
+    /**
+     * Key of a memoized response consisting of the response definition and transformer
+     * parameters of the stub mapping and the values of the request attributes read
+     * by the template.
+     */
+    protected static final class MemoKey {
+        protected final ResponseDefinition mResponseDefinition;
+        protected final Parameters mParameters;
+        protected final List<String> mAttributeValues;
+        protected final int mHashCode;
+
+        /**
+         * Creates a key.
+         *
+         * @param inResponseDefinition Response definition of stub mapping.
+         * @param inParameters Transformer parameters of stub mapping.
+         * @param inAttributeValues Values of request attributes read by template.
+         */
+        protected MemoKey(final ResponseDefinition inResponseDefinition, final Parameters inParameters,
+            final List<String> inAttributeValues) {
+            mResponseDefinition = inResponseDefinition;
+            mParameters = inParameters;
+            mAttributeValues = inAttributeValues;
+            mHashCode = Objects.hash(inResponseDefinition, inParameters, inAttributeValues);
+        }
+
+        @Override
+        public boolean equals(final Object inOther) {
+            if (this == inOther) {
+                return true;
+            }
+            if (!(inOther instanceof MemoKey)) {
+                return false;
+            }
+            final MemoKey theOther = (MemoKey) inOther;
+            return mHashCode == theOther.mHashCode
+                && mAttributeValues.equals(theOther.mAttributeValues)
+                && Objects.equals(mParameters, theOther.mParameters)
+                && Objects.equals(mResponseDefinition, theOther.mResponseDefinition);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+    }
+}
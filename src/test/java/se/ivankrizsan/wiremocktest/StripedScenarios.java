@@ -0,0 +1,253 @@
+package se.ivankrizsan.wiremocktest;
+
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
+import com.github.tomakehurst.wiremock.common.FileSource;
+import com.github.tomakehurst.wiremock.extension.Parameters;
+import com.github.tomakehurst.wiremock.extension.ResponseDefinitionTransformer;
+import com.github.tomakehurst.wiremock.http.Request;
+import com.github.tomakehurst.wiremock.http.ResponseDefinition;
+import com.github.tomakehurst.wiremock.matching.MatchResult;
+import com.github.tomakehurst.wiremock.matching.RequestMatcherExtension;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Stateful scenarios for WireMock in which the state of each scenario is kept in
+ * a separate lock-free cell.
+ * Scenarios are independent of each other, so that requests driving different
+ * scenarios never contend. State transitions are compare-and-set operations, meaning
+ * that a transition only takes place if the scenario still is in the state that
+ * the stub mapping required when the request was matched.
+ * Optionally, the value of a request header can be used as client key, giving each
+ * client an independent state machine for each scenario.
+ *
+ * The scenarios consist of two WireMock extensions that must both be registered with
+ * the WireMock server: a request matcher that matches requests when a scenario is in
+ * a required state and a response definition transformer that performs the state
+ * transition when a response is served.
+ * WireMock offers no way for extensions to be notified when the WireMock server is reset,
+ * so {@code resetAll} and {@code resetScenarios} of the WireMock server do not reset
+ * these scenarios. Call {@link #reset()} in addition to resetting the WireMock server.
+ *
+ * @author Ivan Krizsan
+ */
+public class StripedScenarios {
+    /* Constant(s): */
+    private static final Logger LOGGER = LoggerFactory.getLogger(StripedScenarios.class);
+    public static final String MATCHER_NAME = "striped-scenario-state";
+    public static final String TRANSFORMER_NAME = "striped-scenario-transition";
+    protected static final String SCENARIO_PARAMETER = "scenario";
+    protected static final String REQUIRED_STATE_PARAMETER = "requiredState";
+    protected static final String NEW_STATE_PARAMETER = "newState";
+    /** Separates scenario name from client key in state cell keys. */
+    protected static final char CLIENT_KEY_SEPARATOR = '\u0000';
+
+    /* Instance variable(s): */
+    protected final ConcurrentHashMap<String, AtomicReference<String>> mStateCells =
+        new ConcurrentHashMap<>();
+    protected final String mClientKeyHeaderName;
+    protected final ScenarioStateMatcher mMatcher = new ScenarioStateMatcher();
+    protected final ScenarioStateTransformer mTransformer = new ScenarioStateTransformer();
+
+    /**
+     * Creates scenarios in which all clients share the state of each scenario.
+     */
+    public StripedScenarios() {
+        this(null);
+    }
+
+    /**
+     * Creates scenarios in which each client, identified by the value of the request
+     * header with the supplied name, has its own state for each scenario.
+     * Requests without the header share the state of each scenario.
+     *
+     * @param inClientKeyHeaderName Name of request header holding client key, or null
+     * if all clients are to share the state of each scenario.
+     */
+    public StripedScenarios(final String inClientKeyHeaderName) {
+        mClientKeyHeaderName = inClientKeyHeaderName;
+    }
+
+    /**
+     * Retrieves the request matcher extension that is to be registered with the WireMock server.
+     *
+     * @return Request matcher extension.
+     */
+    public RequestMatcherExtension getMatcher() {
+        return mMatcher;
+    }
+
+    /**
+     * Retrieves the response transformer extension that is to be registered with the
+     * WireMock server.
+     *
+     * @return Response transformer extension.
+     */
+    public ResponseDefinitionTransformer getTransformer() {
+        return mTransformer;
+    }
+
+    /**
+     * Creates parameters for the request matcher that makes a stub mapping only match
+     * requests when the supplied scenario is in the supplied state.
+     *
+     * @param inScenarioName Scenario name.
+     * @param inRequiredState State the scenario must be in.
+     * @return Request matcher parameters.
+     */
+    public static Parameters whenScenarioStateIs(final String inScenarioName, final String inRequiredState) {
+        final Map<String, Object> theParameters = new HashMap<>();
+        theParameters.put(SCENARIO_PARAMETER, inScenarioName);
+        theParameters.put(REQUIRED_STATE_PARAMETER, inRequiredState);
+        return Parameters.from(theParameters);
+    }
+
+    /**
+     * Makes the supplied response transition the supplied scenario from the required
+     * state to the new state when the response is served.
+     *
+     * @param inResponseDefinitionBuilder Builder of response.
+     * @param inScenarioName Scenario name.
+     * @param inRequiredState State the scenario is required to be in.
+     * @param inNewState State the scenario is to transition to.
+     * @return Builder of response.
+     */
+    public static ResponseDefinitionBuilder willTransition(
+        final ResponseDefinitionBuilder inResponseDefinitionBuilder, final String inScenarioName,
+        final String inRequiredState, final String inNewState) {
+        final Map<String, Object> theParameters = new HashMap<>();
+        theParameters.put(SCENARIO_PARAMETER, inScenarioName);
+        theParameters.put(REQUIRED_STATE_PARAMETER, inRequiredState);
+        theParameters.put(NEW_STATE_PARAMETER, inNewState);
+        return inResponseDefinitionBuilder
+            .withTransformers(TRANSFORMER_NAME)
+            .withTransformerParameters(theParameters);
+    }
+
+    /**
+     * Retrieves the current state of the supplied scenario for the supplied client.
+     *
+     * @param inScenarioName Scenario name.
+     * @param inClientKey Client key, or null for the state shared by all clients.
+     * @return Current state.
+     */
+    public String getState(final String inScenarioName, final String inClientKey) {
+        return stateCell(inScenarioName, inClientKey).get();
+    }
+
+    /**
+     * Transitions the supplied scenario for the supplied client to the new state,
+     * provided that the scenario currently is in the expected state.
+     *
+     * @param inScenarioName Scenario name.
+     * @param inClientKey Client key, or null for the state shared by all clients.
+     * @param inExpectedState State the scenario is expected to be in.
+     * @param inNewState State to transition to.
+     * @return True if the transition took place, false if the scenario was not in
+     * the expected state.
+     */
+    public boolean compareAndTransition(final String inScenarioName, final String inClientKey,
+        final String inExpectedState, final String inNewState) {
+        final AtomicReference<String> theStateCell = stateCell(inScenarioName, inClientKey);
+        String theCurrentState;
+        do {
+            theCurrentState = theStateCell.get();
+            if (!theCurrentState.equals(inExpectedState)) {
+                return false;
+            }
+        } while (!theStateCell.compareAndSet(theCurrentState, inNewState));
+        return true;
+    }
+
+    /**
+     * Resets all scenarios, for all clients, to the started state.
+     * Not invoked when the WireMock server is reset, so it must be called in addition to
+     * {@code resetAll} or {@code resetScenarios} of the WireMock server.
+     */
+    public void reset() {
+        mStateCells.clear();
+    }
+
+    /**
+     * Retrieves the state cell of the supplied scenario and client, creating it in the
+     * started state if it does not exist.
+     *
+     * @param inScenarioName Scenario name.
+     * @param inClientKey Client key, or null for the state shared by all clients.
+     * @return State cell.
+     */
+    protected AtomicReference<String> stateCell(final String inScenarioName, final String inClientKey) {
+        final String theCellKey = inClientKey == null
+            ? inScenarioName
+            : inScenarioName + CLIENT_KEY_SEPARATOR + inClientKey;
+        final AtomicReference<String> theStateCell = mStateCells.get(theCellKey);
+        if (theStateCell != null) {
+            return theStateCell;
+        }
+        return mStateCells.computeIfAbsent(theCellKey, theKey -> new AtomicReference<>(Scenario.STARTED));
+    }
+
+    /**
+     * Retrieves the client key of the supplied request.
+     *
+     * @param inRequest Request.
+     * @return Client key, or null if no client key.
+     */
+    protected String clientKey(final Request inRequest) {
+        return mClientKeyHeaderName != null ? inRequest.getHeader(mClientKeyHeaderName) : null;
+    }
+
+    /**
+     * Request matcher that matches requests when a scenario is in a required state.
+     */
+    protected class ScenarioStateMatcher extends RequestMatcherExtension {
+        @Override
+        public MatchResult match(final Request inRequest, final Parameters inParameters) {
+            final String theScenarioName = (String) inParameters.get(SCENARIO_PARAMETER);
+            final String theRequiredState = (String) inParameters.get(REQUIRED_STATE_PARAMETER);
+            return MatchResult.of(theRequiredState.equals(getState(theScenarioName, clientKey(inRequest))));
+        }
+
+        @Override
+        public String getName() {
+            return MATCHER_NAME;
+        }
+    }
+
+    /**
+     * Response transformer that transitions a scenario to a new state when a response
+     * is served. The response is left unchanged.
+     */
+    protected class ScenarioStateTransformer extends ResponseDefinitionTransformer {
+        @Override
+        public ResponseDefinition transform(final Request inRequest,
+            final ResponseDefinition inResponseDefinition, final FileSource inFileSource,
+            final Parameters inParameters) {
+            final String theScenarioName = (String) inParameters.get(SCENARIO_PARAMETER);
+            final String theRequiredState = (String) inParameters.get(REQUIRED_STATE_PARAMETER);
+            final String theNewState = (String) inParameters.get(NEW_STATE_PARAMETER);
+            final String theClientKey = clientKey(inRequest);
+            if (!compareAndTransition(theScenarioName, theClientKey, theRequiredState, theNewState)) {
+                LOGGER.debug("Scenario {} for client {} no longer in state {}, transition to {} skipped",
+                    theScenarioName, theClientKey, theRequiredState, theNewState);
+            }
+            return inResponseDefinition;
+        }
+
+        @Override
+        public boolean applyGlobally() {
+            return false;
+        }
+
+        @Override
+        public String getName() {
+            return TRANSFORMER_NAME;
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package se.ivankrizsan.wiremocktest;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.ScenarioMappingBuilder;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import io.restassured.RestAssured;
+import io.restassured.http.ContentType;
+import io.restassured.specification.RequestSpecification;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * Examples on how to use stateful scenarios held in lock-free per-scenario cells,
+ * including a concurrency stress test and a throughput benchmark comparing them to
+ * WireMock's built-in scenarios.
+ *
+ * @author Ivan Krizsan
+ */
+public class StripedScenariosTests extends AbstractTestBase {
+    /* Constant(s): */
+    private static final Logger LOGGER = LoggerFactory.getLogger(StripedScenariosTests.class);
+    protected static final String SCENARIO_NAME = "checkout";
+    protected static final String CLIENT_KEY_HEADER = "X-Scenario-Client";
+    protected static final String STEP_ONE_STATE = "Step 1";
+    protected static final String STEP_TWO_STATE = "Step 2";
+    protected static final String SCENARIO_USER_PREFIX = "user-";
+    protected static final int SCENARIO_USER_COUNT = 1000;
+    protected static final int SCENARIO_STEP_COUNT = 3;
+    protected static final String BENCHMARK_PROPERTY = "scenarios.benchmark";
+
+    /* Instance variable(s): */
+    protected WireMockServer mWireMockServer;
+
+    /**
+     * Performs cleanup after each test.
+     */
+    @After
+    public void tearDown() {
+        if (mWireMockServer != null) {
+            mWireMockServer.stop();
+        }
+    }
+
+    /**
+     * Tests a scenario whose state is shared by all clients.
+     *
+     * Expected result: Consecutive requests should receive the responses of the
+     * consecutive scenario states, regardless of client.
+     */
+    @Test
+    public void sharedScenarioTest() {
+        startServerWithScenario(new StripedScenarios());
+
+        assertScenarioResponse(null, "step-1");
+        assertScenarioResponse("other-client", "step-2");
+        assertScenarioResponse(null, "done");
+        assertScenarioResponse("other-client", "done");
+    }
+
+    /**
+     * Tests a scenario in which each client has its own state.
+     *
+     * Expected result: Each client should progress through the scenario states
+     * independently of the other clients.
+     */
+    @Test
+    public void perClientScenarioTest() {
+        final StripedScenarios theScenarios = new StripedScenarios(CLIENT_KEY_HEADER);
+        startServerWithScenario(theScenarios);
+
+        assertScenarioResponse("client-1", "step-1");
+        assertScenarioResponse("client-1", "step-2");
+        assertScenarioResponse("client-2", "step-1");
+        assertScenarioResponse("client-1", "done");
+        assertScenarioResponse("client-2", "step-2");
+
+        Assert.assertEquals("Client 1 should have completed the scenario",
+            STEP_TWO_STATE, theScenarios.getState(SCENARIO_NAME, "client-1"));
+        Assert.assertEquals("Client 2 should be at the second step",
+            STEP_TWO_STATE, theScenarios.getState(SCENARIO_NAME, "client-2"));
+        Assert.assertEquals("Client 3 should not have started the scenario",
+            Scenario.STARTED, theScenarios.getState(SCENARIO_NAME, "client-3"));
+    }
+
+    /**
+     * Stress tests concurrent compare-and-set state transitions, letting a number of
+     * threads race to advance a counting scenario through a sequence of states.
+     *
+     * Expected result: Each transition should succeed for exactly one thread and
+     * the scenario should end up in the last state.
+     *
+     * @throws Exception If error occurs waiting for threads.
+     */
+    @Test
+    public void concurrentTransitionsStressTest() throws Exception {
+        final StripedScenarios theScenarios = new StripedScenarios();
+        final int theTransitionCount = 100_000;
+        final int theThreadCount = 16;
+        final AtomicInteger theSuccessfulTransitions = new AtomicInteger();
+        final CountDownLatch theStartLatch = new CountDownLatch(1);
+        final ExecutorService theExecutor = Executors.newFixedThreadPool(theThreadCount);
+
+        try {
+            final List<Future<?>> theFutures = new ArrayList<>();
+            for (int i = 0; i < theThreadCount; i++) {
+                theFutures.add(theExecutor.submit(() -> {
+                    theStartLatch.await();
+                    while (true) {
+                        final String theState = theScenarios.getState(SCENARIO_NAME, null);
+                        final int theCounter = Scenario.STARTED.equals(theState) ? 0 : Integer.parseInt(theState);
+                        if (theCounter == theTransitionCount) {
+                            return null;
+                        }
+                        if (theScenarios.compareAndTransition(
+                            SCENARIO_NAME, null, theState, Integer.toString(theCounter + 1))) {
+                            theSuccessfulTransitions.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            theStartLatch.countDown();
+            for (final Future<?> theFuture : theFutures) {
+                theFuture.get(DEFAULT_TIMEOUT * 6, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            theExecutor.shutdownNow();
+        }
+
+        Assert.assertEquals("Each transition should succeed exactly once",
+            theTransitionCount, theSuccessfulTransitions.get());
+        Assert.assertEquals("Scenario should be in the last state",
+            Integer.toString(theTransitionCount), theScenarios.getState(SCENARIO_NAME, null));
+    }
+
+    /**
+     * Tests resetting the WireMock server and the scenarios after a client has advanced
+     * through a scenario.
+     *
+     * Expected result: Resetting the scenarios of the WireMock server should not reset the
+     * striped scenarios, while resetting the striped scenarios should return the client to
+     * the started state.
+     */
+    @Test
+    public void resetScenariosTest() {
+        final StripedScenarios theScenarios = new StripedScenarios(CLIENT_KEY_HEADER);
+        startServerWithScenario(theScenarios);
+        assertScenarioResponse("client-1", "step-1");
+
+        mWireMockServer.resetScenarios();
+        Assert.assertEquals("Resetting WireMock scenarios should not reset striped scenarios",
+            STEP_ONE_STATE, theScenarios.getState(SCENARIO_NAME, "client-1"));
+
+        theScenarios.reset();
+        Assert.assertEquals("Resetting striped scenarios should return client to started state",
+            Scenario.STARTED, theScenarios.getState(SCENARIO_NAME, "client-1"));
+        assertScenarioResponse("client-1", "step-1");
+    }
+
+    /**
+     * Benchmarks a large number of concurrent scenario users, each with its own scenario state,
+     * going through all the steps of the scenario, first using WireMock's built-in scenarios
+     * and then using striped scenarios.
+     * Since the state of a built-in scenario is shared by all clients, the built-in baseline
+     * uses one scenario, with its own stub mappings, per scenario user.
+     * Each scenario user runs on its own thread, so that all scenario users are active at
+     * the same time. The benchmark only runs when the system property "scenarios.benchmark"
+     * is set to true, for example:
+     * mvn test -Dscenarios.benchmark=true -Dtest=StripedScenariosTests
+     *
+     * Expected result: Each scenario user should receive the responses of all the scenario
+     * steps in order. The throughput of both scenario implementations is logged.
+     *
+     * @throws Exception If error occurs waiting for scenario users.
+     */
+    @Test
+    public void concurrentScenarioUsersThroughputBenchmarkTest() throws Exception {
+        Assume.assumeTrue("Benchmark only runs when " + BENCHMARK_PROPERTY + " is true",
+            Boolean.getBoolean(BENCHMARK_PROPERTY));
+
+        startServer(null);
+        for (int i = 0; i < SCENARIO_USER_COUNT; i++) {
+            stubBuiltInScenarioSteps(SCENARIO_USER_PREFIX + i);
+        }
+        final double theBuiltInThroughput = measureScenarioUsersThroughput(mWireMockServer::resetScenarios);
+        mWireMockServer.stop();
+
+        final StripedScenarios theScenarios = new StripedScenarios(CLIENT_KEY_HEADER);
+        startServerWithScenario(theScenarios);
+        final double theStripedThroughput = measureScenarioUsersThroughput(theScenarios::reset);
+
+        LOGGER.info("{} concurrent scenario users, {} requests each: built-in scenarios {} requests/s, "
+                + "striped scenarios {} requests/s",
+            SCENARIO_USER_COUNT, SCENARIO_STEP_COUNT, String.format("%.0f", theBuiltInThroughput),
+            String.format("%.0f", theStripedThroughput));
+    }
+
+    /**
+     * Lets all scenario users go through all the steps of the scenario concurrently, once to
+     * warm up and once measuring the throughput, resetting the scenarios before each round.
+     * The requests are not timed by the request timing filter, since recording the timings
+     * from many threads at once would contend.
+     *
+     * @param inScenarioReset Resets the scenarios of the server.
+     * @return Throughput of measured round in requests per second.
+     * @throws Exception If error occurs waiting for scenario users.
+     */
+    protected double measureScenarioUsersThroughput(final Runnable inScenarioReset) throws Exception {
+        RestAssured.replaceFiltersWith(Collections.emptyList());
+        double theThroughput = 0;
+        for (int theRound = 0; theRound < 2; theRound++) {
+            inScenarioReset.run();
+            final ExecutorService theExecutor = Executors.newFixedThreadPool(SCENARIO_USER_COUNT);
+            final CountDownLatch theStartLatch = new CountDownLatch(1);
+            try {
+                final List<Future<?>> theFutures = new ArrayList<>();
+                for (int i = 0; i < SCENARIO_USER_COUNT; i++) {
+                    final String theClientKey = SCENARIO_USER_PREFIX + i;
+                    theFutures.add(theExecutor.submit(() -> {
+                        theStartLatch.await();
+                        assertScenarioResponse(theClientKey, "step-1");
+                        assertScenarioResponse(theClientKey, "step-2");
+                        assertScenarioResponse(theClientKey, "done");
+                        return null;
+                    }));
+                }
+                final long theStartTime = System.nanoTime();
+                theStartLatch.countDown();
+                for (final Future<?> theFuture : theFutures) {
+                    theFuture.get(DEFAULT_TIMEOUT * 12, TimeUnit.MILLISECONDS);
+                }
+                final double theElapsedSeconds = (System.nanoTime() - theStartTime) / 1_000_000_000.0;
+                theThroughput = SCENARIO_USER_COUNT * SCENARIO_STEP_COUNT / theElapsedSeconds;
+            } finally {
+                theExecutor.shutdownNow();
+            }
+        }
+        return theThroughput;
+    }
+
+    /**
+     * Starts a WireMock server with the supplied scenarios registered and stub mappings
+     * for a three-step scenario.
+     *
+     * @param inScenarios Scenarios.
+     */
+    protected void startServerWithScenario(final StripedScenarios inScenarios) {
+        startServer(inScenarios);
+
+        stubScenarioStep(Scenario.STARTED, STEP_ONE_STATE, "step-1");
+        stubScenarioStep(STEP_ONE_STATE, STEP_TWO_STATE, "step-2");
+        stubScenarioStep(STEP_TWO_STATE, null, "done");
+    }
+
+    /**
+     * Starts a WireMock server able to serve all scenario users concurrently.
+     *
+     * @param inScenarios Scenarios to register, or null if only built-in scenarios are used.
+     */
+    protected void startServer(final StripedScenarios inScenarios) {
+        initializeRestAssuredHttp();
+        final WireMockConfiguration theConfiguration = WireMockConfiguration
+            .options()
+            .port(HTTP_ENDPOINT_PORT)
+            .containerThreads(SCENARIO_USER_COUNT + 8)
+            .jettyAcceptQueueSize(SCENARIO_USER_COUNT);
+        if (inScenarios != null) {
+            theConfiguration.extensions(inScenarios.getMatcher(), inScenarios.getTransformer());
+        }
+        mWireMockServer = new WireMockServer(theConfiguration);
+        mWireMockServer.start();
+    }
+
+    /**
+     * Sets up stub mappings for all steps of a WireMock built-in scenario that only
+     * the scenario user with the supplied client key takes part in.
+     *
+     * @param inClientKey Client key of scenario user.
+     */
+    protected void stubBuiltInScenarioSteps(final String inClientKey) {
+        final String theScenarioName = SCENARIO_NAME + "-" + inClientKey;
+        final String[][] theSteps = {
+            {Scenario.STARTED, STEP_ONE_STATE, "step-1"},
+            {STEP_ONE_STATE, STEP_TWO_STATE, "step-2"},
+            {STEP_TWO_STATE, null, "done"}
+        };
+        for (final String[] theStep : theSteps) {
+            final ScenarioMappingBuilder theMappingBuilder = get(urlEqualTo(BASE_PATH))
+                .withHeader(CLIENT_KEY_HEADER, WireMock.equalTo(inClientKey))
+                .inScenario(theScenarioName)
+                .whenScenarioStateIs(theStep[0]);
+            if (theStep[1] != null) {
+                theMappingBuilder.willSetStateTo(theStep[1]);
+            }
+            mWireMockServer.stubFor(
+                theMappingBuilder.willReturn(
+                    aResponse()
+                        .withStatus(HttpStatus.OK.value())
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_PLAIN_VALUE)
+                        .withBody(theStep[2])
+                )
+            );
+        }
+    }
+
+    /**
+     * Sets up a stub mapping for one step of the scenario.
+     *
+     * @param inRequiredState State the scenario must be in for the step.
+     * @param inNewState State the scenario is to transition to, or null if no transition.
+     * @param inResponseBody Body of the response of the step.
+     */
+    protected void stubScenarioStep(final String inRequiredState, final String inNewState,
+        final String inResponseBody) {
+        mWireMockServer.stubFor(
+            get(urlEqualTo(BASE_PATH))
+                .andMatching(StripedScenarios.MATCHER_NAME,
+                    StripedScenarios.whenScenarioStateIs(SCENARIO_NAME, inRequiredState))
+                .willReturn(
+                    inNewState == null
+                        ? aResponse()
+                            .withStatus(HttpStatus.OK.value())
+                            .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_PLAIN_VALUE)
+                            .withBody(inResponseBody)
+                        : StripedScenarios.willTransition(
+                            aResponse()
+                                .withStatus(HttpStatus.OK.value())
+                                .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_PLAIN_VALUE)
+                                .withBody(inResponseBody),
+                            SCENARIO_NAME, inRequiredState, inNewState)
+                )
+        );
+    }
+
+    /**
+     * Sends a request to the scenario and verifies the response body.
+     *
+     * @param inClientKey Client key to send in request, or null if no client key.
+     * @param inExpectedBody Expected response body.
+     */
+    protected void assertScenarioResponse(final String inClientKey, final String inExpectedBody) {
+        final RequestSpecification theRequest = RestAssured
+            .given()
+            .accept(ContentType.TEXT);
+        if (inClientKey != null) {
+            theRequest.header(CLIENT_KEY_HEADER, inClientKey);
+        }
+        theRequest
+            .when()
+            .get(BASE_PATH)
+            .then()
+            .statusCode(HttpStatus.OK.value())
+            .body(equalTo(inExpectedBody));
+    }
+}
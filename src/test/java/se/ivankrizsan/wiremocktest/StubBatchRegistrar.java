@@ -0,0 +1,460 @@
+package se.ivankrizsan.wiremocktest;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.tomakehurst.wiremock.core.Admin;
+import com.github.tomakehurst.wiremock.http.ResponseDefinition;
+import com.github.tomakehurst.wiremock.matching.RequestPattern;
+import com.github.tomakehurst.wiremock.stubbing.StubMapping;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.WeakHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Registers batches of stub mappings with a WireMock server.
+ * A batch is validated in its entirety, in parallel, before any of its stub mappings
+ * are registered. If one or more stub mappings in a batch are invalid, none of the stub
+ * mappings in the batch are registered. If registering a stub mapping fails part-way
+ * through a batch, the changes already made by the batch are rolled back.
+ * Note that registration is not atomic as seen by the WireMock server: stub mappings are
+ * registered one at a time using the admin interface, since WireMock does not offer a way
+ * to insert several stub mappings at once or to swap its stub mapping store. Request matching
+ * and stub mappings registered by other means, such as {@code stubFor}, may thus see
+ * a partially registered batch.
+ * Batch operations are serialized using one lock per admin, so that the stub mappings
+ * of concurrent batches registered with the same admin are never interleaved. Registrars
+ * using different admin objects for the same server, for instance the {@code WireMockServer}
+ * in-process and the admin API extension, use different locks.
+ * Stub mappings can also be sent to a remote WireMock server in one single admin request,
+ * provided that the remote server has the {@link BatchStubMappingsAdminExtension} installed.
+ *
+ * @author Ivan Krizsan
+ */
+public class StubBatchRegistrar {
+    /* Constant(s): */
+    private static final Logger LOGGER = LoggerFactory.getLogger(StubBatchRegistrar.class);
+    /** Admin API path, relative to the admin root, at which batches of stub mappings are accepted. */
+    public static final String BATCH_MAPPINGS_ADMIN_PATH = "/batch/mappings";
+    protected static final String ADMIN_ROOT_PATH = "/__admin";
+    protected static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    protected static final int MIN_HTTP_STATUS = 100;
+    protected static final int MAX_HTTP_STATUS = 599;
+    /**
+     * Default maximum number of existing stub mappings for which replacing stub mappings
+     * edits and removes existing stub mappings one by one, that is no limit.
+     */
+    public static final int DEFAULT_INCREMENTAL_REPLACE_LIMIT = Integer.MAX_VALUE;
+
+    /* Class variable(s): */
+    /** Batch locks by admin, shared by all registrars using the same admin. */
+    private static final Map<Admin, Object> sBatchLocks = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /* Instance variable(s): */
+    protected final Admin mAdmin;
+    protected int mIncrementalReplaceLimit = DEFAULT_INCREMENTAL_REPLACE_LIMIT;
+
+    /**
+     * Creates a registrar that registers stub mappings with the supplied WireMock admin.
+     * Note that {@code WireMockServer} implements the admin interface.
+     *
+     * @param inAdmin Admin of WireMock server to register stub mappings with.
+     */
+    public StubBatchRegistrar(final Admin inAdmin) {
+        mAdmin = inAdmin;
+    }
+
+    /**
+     * Sets the maximum number of existing stub mappings for which replacing stub mappings
+     * edits and removes existing stub mappings one by one.
+     * WireMock finds the stub mapping to edit or remove by a linear search, so editing or
+     * removing stub mappings one by one takes time quadratic in the number of stub mappings.
+     * When there are more existing stub mappings than this limit, all the existing stub
+     * mappings are instead reset before the new stub mappings are registered, which is faster
+     * but leaves requests unmatched until the new stub mappings have been registered.
+     * By default there is no limit, so replacing stub mappings never leaves requests unmatched.
+     *
+     * @param inIncrementalReplaceLimit Maximum number of existing stub mappings.
+     */
+    public void setIncrementalReplaceLimit(final int inIncrementalReplaceLimit) {
+        mIncrementalReplaceLimit = inIncrementalReplaceLimit;
+    }
+
+    /**
+     * Registers all the stub mappings in the supplied JSON array.
+     *
+     * @param inJsonArrayStream Stream containing a JSON array of stub mappings. Not closed.
+     * @return Number of stub mappings registered.
+     * @throws IOException If error occurs reading the stream or if the JSON is malformed.
+     * @throws IllegalArgumentException If one or more of the stub mappings are invalid.
+     */
+    public int registerAll(final InputStream inJsonArrayStream) throws IOException {
+        return registerAll(parseStubMappings(inJsonArrayStream));
+    }
+
+    /**
+     * Registers all the supplied stub mappings.
+     *
+     * @param inStubMappings Stub mappings to register.
+     * @return Number of stub mappings registered.
+     * @throws IllegalArgumentException If one or more of the stub mappings are invalid.
+     */
+    public int registerAll(final Collection<StubMapping> inStubMappings) {
+        validate(new ArrayList<>(inStubMappings));
+
+        synchronized (batchLock()) {
+            final List<StubMapping> theAddedStubMappings = new ArrayList<>(inStubMappings.size());
+            try {
+                for (final StubMapping theStubMapping : inStubMappings) {
+                    mAdmin.addStubMapping(theStubMapping);
+                    theAddedStubMappings.add(theStubMapping);
+                }
+            } catch (final RuntimeException theException) {
+                LOGGER.warn("Registering batch failed, removing {} already registered stub mappings",
+                    theAddedStubMappings.size());
+                removeAll(theAddedStubMappings);
+                throw theException;
+            }
+        }
+        LOGGER.debug("Registered batch of {} stub mappings", inStubMappings.size());
+        return inStubMappings.size();
+    }
+
+    /**
+     * Replaces all the stub mappings of the WireMock server with the stub mappings in
+     * the supplied JSON array.
+     *
+     * @param inJsonArrayStream Stream containing a JSON array of stub mappings. Not closed.
+     * @return Number of stub mappings registered.
+     * @throws IOException If error occurs reading the stream or if the JSON is malformed.
+     * @throws IllegalArgumentException If one or more of the stub mappings are invalid.
+     */
+    public int replaceAll(final InputStream inJsonArrayStream) throws IOException {
+        return replaceAll(parseStubMappings(inJsonArrayStream));
+    }
+
+    /**
+     * Replaces all the stub mappings of the WireMock server with the supplied stub mappings.
+     * The new stub mappings are registered before the old stub mappings are removed,
+     * so there is no point in time at which requests cannot be matched by either
+     * an old or a new stub mapping. Since WireMock prefers the most recently added
+     * of stub mappings with equal priority, the new stub mappings take precedence
+     * during the short period when both old and new stub mappings are registered.
+     * Old stub mappings that have the same id as a new stub mapping are edited
+     * in place instead of being removed.
+     * See {@link #setIncrementalReplaceLimit(int)} for an optional, faster, replacement
+     * of large numbers of stub mappings that does not give this guarantee.
+     * If registering a new stub mapping fails, the old stub mappings are restored.
+     *
+     * @param inStubMappings New stub mappings.
+     * @return Number of stub mappings registered.
+     * @throws IllegalArgumentException If one or more of the stub mappings are invalid.
+     */
+    public int replaceAll(final Collection<StubMapping> inStubMappings) {
+        validate(new ArrayList<>(inStubMappings));
+
+        synchronized (batchLock()) {
+            final List<StubMapping> theOldStubMappings = mAdmin.listAllStubMappings().getMappings();
+            if (theOldStubMappings.size() > mIncrementalReplaceLimit) {
+                resetAndRegister(theOldStubMappings, inStubMappings);
+            } else {
+                replaceIncrementally(theOldStubMappings, inStubMappings);
+            }
+        }
+        LOGGER.debug("Replaced stub mappings with batch of {} stub mappings", inStubMappings.size());
+        return inStubMappings.size();
+    }
+
+    /**
+     * Replaces the supplied old stub mappings with the supplied new stub mappings by first
+     * adding or editing the new stub mappings and then removing the old stub mappings
+     * not among the new ones.
+     *
+     * @param inOldStubMappings Existing stub mappings, most recently added first.
+     * @param inNewStubMappings New stub mappings.
+     */
+    protected void replaceIncrementally(final List<StubMapping> inOldStubMappings,
+        final Collection<StubMapping> inNewStubMappings) {
+        final Map<UUID, StubMapping> theOldStubMappingsById = new HashMap<>();
+        for (final StubMapping theOldStubMapping : inOldStubMappings) {
+            theOldStubMappingsById.put(theOldStubMapping.getId(), theOldStubMapping);
+        }
+        final Set<UUID> theNewStubMappingIds = new HashSet<>();
+        final List<StubMapping> theAddedStubMappings = new ArrayList<>();
+        final List<StubMapping> theEditedOldStubMappings = new ArrayList<>();
+
+        try {
+            for (final StubMapping theStubMapping : inNewStubMappings) {
+                theNewStubMappingIds.add(theStubMapping.getId());
+                final StubMapping theOldStubMapping = theOldStubMappingsById.get(theStubMapping.getId());
+                if (theOldStubMapping != null) {
+                    mAdmin.editStubMapping(theStubMapping);
+                    theEditedOldStubMappings.add(theOldStubMapping);
+                } else {
+                    mAdmin.addStubMapping(theStubMapping);
+                    theAddedStubMappings.add(theStubMapping);
+                }
+            }
+        } catch (final RuntimeException theException) {
+            LOGGER.warn("Replacing stub mappings failed, restoring old stub mappings");
+            removeAll(theAddedStubMappings);
+            for (final StubMapping theEditedOldStubMapping : theEditedOldStubMappings) {
+                mAdmin.editStubMapping(theEditedOldStubMapping);
+            }
+            throw theException;
+        }
+
+        /* All new stub mappings are registered, so a failure here leaves some old stub mappings in place. */
+        for (final StubMapping theOldStubMapping : inOldStubMappings) {
+            if (!theNewStubMappingIds.contains(theOldStubMapping.getId())) {
+                mAdmin.removeStubMapping(theOldStubMapping);
+            }
+        }
+    }
+
+    /**
+     * Replaces the supplied old stub mappings with the supplied new stub mappings by
+     * resetting all stub mappings and then registering the new stub mappings.
+     *
+     * @param inOldStubMappings Existing stub mappings, most recently added first.
+     * @param inNewStubMappings New stub mappings.
+     */
+    protected void resetAndRegister(final List<StubMapping> inOldStubMappings,
+        final Collection<StubMapping> inNewStubMappings) {
+        LOGGER.debug("Resetting {} stub mappings before registering new stub mappings",
+            inOldStubMappings.size());
+        mAdmin.resetMappings();
+        try {
+            for (final StubMapping theStubMapping : inNewStubMappings) {
+                mAdmin.addStubMapping(theStubMapping);
+            }
+        } catch (final RuntimeException theException) {
+            LOGGER.warn("Replacing stub mappings failed, restoring old stub mappings");
+            mAdmin.resetMappings();
+            /* Stub mappings are listed most recent first, so add them in reverse to keep the order. */
+            for (int i = inOldStubMappings.size() - 1; i >= 0; i--) {
+                mAdmin.addStubMapping(inOldStubMappings.get(i));
+            }
+            throw theException;
+        }
+    }
+
+    /**
+     * Removes the supplied stub mappings, ignoring failures, when rolling back a batch.
+     *
+     * @param inStubMappings Stub mappings to remove.
+     */
+    protected void removeAll(final List<StubMapping> inStubMappings) {
+        for (final StubMapping theStubMapping : inStubMappings) {
+            try {
+                mAdmin.removeStubMapping(theStubMapping);
+            } catch (final RuntimeException theException) {
+                LOGGER.warn("Unable to remove stub mapping {} when rolling back batch", theStubMapping.getId(),
+                    theException);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the lock serializing batch operations on the admin of this registrar.
+     *
+     * @return Batch lock.
+     */
+    protected Object batchLock() {
+        return sBatchLocks.computeIfAbsent(mAdmin, theAdmin -> new Object());
+    }
+
+    /**
+     * Sends the supplied stub mappings to a remote WireMock server in one single admin
+     * request. The stub mappings are streamed to the server as a JSON array.
+     * The remote WireMock server must have the {@link BatchStubMappingsAdminExtension}
+     * installed.
+     *
+     * @param inHost Host of remote WireMock server.
+     * @param inPort Port of remote WireMock server.
+     * @param inStubMappings Stub mappings to send.
+     * @param inReplace True if to replace all existing stub mappings, false to add
+     * the stub mappings to the existing ones.
+     * @throws IOException If error occurs sending stub mappings or if the server rejects them.
+     */
+    public static void sendToRemote(final String inHost, final int inPort,
+        final Collection<StubMapping> inStubMappings, final boolean inReplace) throws IOException {
+        final URL theBatchUrl =
+            new URL("http", inHost, inPort, ADMIN_ROOT_PATH + BATCH_MAPPINGS_ADMIN_PATH);
+        final HttpURLConnection theConnection = (HttpURLConnection) theBatchUrl.openConnection();
+        try {
+            theConnection.setRequestMethod(inReplace ? "PUT" : "POST");
+            theConnection.setRequestProperty("Content-Type", "application/json");
+            theConnection.setDoOutput(true);
+            theConnection.setChunkedStreamingMode(64 * 1024);
+
+            try (OutputStream theOutputStream = theConnection.getOutputStream();
+                Writer theWriter = new OutputStreamWriter(theOutputStream, StandardCharsets.UTF_8)) {
+                theWriter.write('[');
+                boolean theFirstFlag = true;
+                for (final StubMapping theStubMapping : inStubMappings) {
+                    if (!theFirstFlag) {
+                        theWriter.write(',');
+                    }
+                    theWriter.write(StubMapping.buildJsonStringFor(theStubMapping));
+                    theFirstFlag = false;
+                }
+                theWriter.write(']');
+            }
+
+            final int theStatusCode = theConnection.getResponseCode();
+            if (theStatusCode != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Remote WireMock server rejected stub mapping batch with status "
+                    + theStatusCode);
+            }
+        } finally {
+            theConnection.disconnect();
+        }
+    }
+
+    /**
+     * Parses the JSON array of stub mappings in the supplied stream.
+     * The array is read one element at a time, while the elements are converted
+     * to stub mappings in parallel.
+     *
+     * @param inJsonArrayStream Stream containing a JSON array of stub mappings. Not closed.
+     * @return Stub mappings in the order they appear in the array.
+     * @throws IOException If error occurs reading the stream or if the JSON is malformed.
+     * @throws IllegalArgumentException If one or more of the stub mappings cannot be parsed.
+     */
+    protected List<StubMapping> parseStubMappings(final InputStream inJsonArrayStream) throws IOException {
+        final List<String> theStubMappingsJson = new ArrayList<>();
+        final JsonFactory theJsonFactory = OBJECT_MAPPER.getFactory();
+        try (JsonParser theParser = theJsonFactory.createParser(inJsonArrayStream)) {
+            theParser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+            if (theParser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Expected a JSON array of stub mappings");
+            }
+            while (theParser.nextToken() == JsonToken.START_OBJECT) {
+                theStubMappingsJson.add(OBJECT_MAPPER.readTree(theParser).toString());
+            }
+            if (theParser.getCurrentToken() != JsonToken.END_ARRAY) {
+                throw new IOException("Expected only stub mapping objects in JSON array");
+            }
+        }
+
+        final StubMapping[] theStubMappings = new StubMapping[theStubMappingsJson.size()];
+        final List<String> theErrors = IntStream
+            .range(0, theStubMappings.length)
+            .parallel()
+            .mapToObj(theIndex -> {
+                try {
+                    theStubMappings[theIndex] = StubMapping.buildFrom(theStubMappingsJson.get(theIndex));
+                    return null;
+                } catch (final RuntimeException theException) {
+                    return "Stub mapping " + theIndex + ": " + theException.getMessage();
+                }
+            })
+            .filter(theError -> theError != null)
+            .collect(Collectors.toList());
+        if (!theErrors.isEmpty()) {
+            throw new IllegalArgumentException("Invalid stub mappings in batch: " + theErrors);
+        }
+
+        return Arrays.asList(theStubMappings);
+    }
+
+    /**
+     * Validates the request patterns and response definitions of the supplied stub mappings.
+     * Stub mappings are validated in parallel, since a batch may contain large numbers
+     * of stub mappings.
+     *
+     * @param inStubMappings Stub mappings to validate.
+     * @throws IllegalArgumentException If one or more of the stub mappings are invalid.
+     */
+    protected void validate(final List<StubMapping> inStubMappings) {
+        final List<String> theErrors = IntStream
+            .range(0, inStubMappings.size())
+            .parallel()
+            .mapToObj(theIndex -> {
+                final String theError = validate(inStubMappings.get(theIndex));
+                return theError != null ? "Stub mapping " + theIndex + " " + theError : null;
+            })
+            .filter(theError -> theError != null)
+            .collect(Collectors.toList());
+        if (!theErrors.isEmpty()) {
+            throw new IllegalArgumentException("Invalid stub mappings in batch: " + theErrors);
+        }
+    }
+
+    /**
+     * Validates the request pattern and response definition of the supplied stub mapping.
+     *
+     * @param inStubMapping Stub mapping to validate.
+     * @return Description of why the stub mapping is invalid, or null if the stub mapping is valid.
+     */
+    protected String validate(final StubMapping inStubMapping) {
+        if (inStubMapping == null) {
+            return "is null";
+        }
+
+        final RequestPattern theRequestPattern = inStubMapping.getRequest();
+        if (theRequestPattern == null) {
+            return "has no request pattern";
+        }
+        if (theRequestPattern.getMethod() == null) {
+            return "has no request method";
+        }
+        final long theUrlMatcherCount = Stream
+            .of(theRequestPattern.getUrl(), theRequestPattern.getUrlPattern(),
+                theRequestPattern.getUrlPath(), theRequestPattern.getUrlPathPattern())
+            .filter(theUrlMatcher -> theUrlMatcher != null)
+            .count();
+        if (theUrlMatcherCount > 1) {
+            return "has more than one URL matcher in its request pattern";
+        }
+
+        final ResponseDefinition theResponseDefinition = inStubMapping.getResponse();
+        if (theResponseDefinition == null) {
+            return "has no response definition";
+        }
+        if (theResponseDefinition.getStatus() < MIN_HTTP_STATUS
+            || theResponseDefinition.getStatus() > MAX_HTTP_STATUS) {
+            return "has invalid response status " + theResponseDefinition.getStatus();
+        }
+        if (theResponseDefinition.specifiesBodyContent() && theResponseDefinition.specifiesBodyFile()) {
+            return "has both a response body and a response body file";
+        }
+        if (theResponseDefinition.getFixedDelayMilliseconds() != null
+            && theResponseDefinition.getFixedDelayMilliseconds() < 0) {
+            return "has negative response delay";
+        }
+        if (theResponseDefinition.getProxyBaseUrl() != null) {
+            try {
+                new URL(theResponseDefinition.getProxyBaseUrl());
+            } catch (final MalformedURLException theException) {
+                return "has invalid proxy base URL " + theResponseDefinition.getProxyBaseUrl();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,332 @@
+package se.ivankrizsan.wiremocktest;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.core.Admin;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import com.github.tomakehurst.wiremock.stubbing.StubMapping;
+import io.restassured.RestAssured;
+import io.restassured.http.ContentType;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * Examples on how to register large numbers of stub mappings with WireMock in batches,
+ * both in-process and using the batch admin API endpoint.
+ *
+ * @author Ivan Krizsan
+ */
+public class StubBatchRegistrationTests extends AbstractTestBase {
+    /* Constant(s): */
+    private static final Logger LOGGER = LoggerFactory.getLogger(StubBatchRegistrationTests.class);
+    protected static final int BATCH_SIZE = 5000;
+
+    /* Instance variable(s): */
+    protected WireMockServer mWireMockServer;
+
+    /**
+     * Performs preparations before each test.
+     */
+    @Before
+    public void setup() {
+        initializeRestAssuredHttp();
+
+        mWireMockServer = new WireMockServer(
+            WireMockConfiguration
+                .options()
+                .port(HTTP_ENDPOINT_PORT)
+                .extensions(new BatchStubMappingsAdminExtension()));
+        mWireMockServer.start();
+    }
+
+    /**
+     * Performs cleanup after each test.
+     */
+    @After
+    public void tearDown() {
+        mWireMockServer.stop();
+    }
+
+    /**
+     * Tests registering a batch of stub mappings in-process.
+     *
+     * Expected result: All the stub mappings should be registered and requests
+     * matching the stub mappings should receive the expected responses.
+     */
+    @Test
+    public void registerBatchInProcessTest() {
+        final List<StubMapping> theStubMappings = createStubMappings(BATCH_SIZE, "batch");
+
+        final long theStartTime = System.currentTimeMillis();
+        new StubBatchRegistrar(mWireMockServer).registerAll(theStubMappings);
+        LOGGER.info("Registered {} stub mappings in-process in {} ms",
+            BATCH_SIZE, System.currentTimeMillis() - theStartTime);
+
+        Assert.assertEquals("All stub mappings should be registered",
+            BATCH_SIZE, mWireMockServer.listAllStubMappings().getMappings().size());
+        assertStubResponds(BATCH_SIZE - 1, "batch");
+    }
+
+    /**
+     * Tests sending a batch of stub mappings to the WireMock server in one admin request.
+     *
+     * Expected result: All the stub mappings should be registered and requests
+     * matching the stub mappings should receive the expected responses.
+     *
+     * @throws Exception If error occurs sending stub mappings.
+     */
+    @Test
+    public void registerBatchUsingAdminApiTest() throws Exception {
+        final List<StubMapping> theStubMappings = createStubMappings(BATCH_SIZE, "remote");
+
+        final long theStartTime = System.currentTimeMillis();
+        StubBatchRegistrar.sendToRemote("localhost", HTTP_ENDPOINT_PORT, theStubMappings, false);
+        LOGGER.info("Registered {} stub mappings using admin API in {} ms",
+            BATCH_SIZE, System.currentTimeMillis() - theStartTime);
+
+        Assert.assertEquals("All stub mappings should be registered",
+            BATCH_SIZE, mWireMockServer.listAllStubMappings().getMappings().size());
+        assertStubResponds(0, "remote");
+        assertStubResponds(BATCH_SIZE - 1, "remote");
+    }
+
+    /**
+     * Tests registering a batch of stub mappings in which one stub mapping is invalid.
+     *
+     * Expected result: The batch should be rejected and no stub mappings should be registered.
+     *
+     * @throws Exception If error occurs reading stub mappings.
+     */
+    @Test
+    public void invalidBatchIsRejectedTest() throws Exception {
+        final String theStubMappingsJson = "["
+            + StubMapping.buildJsonStringFor(createStubMappings(1, "valid").get(0))
+            + ", {\"request\": {\"method\": \"GET\", \"url\": \"/invalid\"}}]";
+
+        try {
+            new StubBatchRegistrar(mWireMockServer).registerAll(
+                new ByteArrayInputStream(theStubMappingsJson.getBytes(StandardCharsets.UTF_8)));
+            Assert.fail("Batch containing invalid stub mapping should be rejected");
+        } catch (final IllegalArgumentException theException) {
+            LOGGER.info("Batch rejected as expected: {}", theException.getMessage());
+        }
+
+        Assert.assertTrue("No stub mappings should be registered",
+            mWireMockServer.listAllStubMappings().getMappings().isEmpty());
+    }
+
+    /**
+     * Tests registering a batch of stub mappings in which the response definitions of
+     * two stub mappings are invalid.
+     *
+     * Expected result: The batch should be rejected, both invalid stub mappings should be
+     * reported and no stub mappings should be registered.
+     */
+    @Test
+    public void invalidResponseDefinitionIsRejectedTest() {
+        final List<StubMapping> theStubMappings = createStubMappings(BATCH_SIZE, "batch");
+        theStubMappings.set(1, get(urlEqualTo(BASE_PATH + "/invalid-status"))
+            .willReturn(aResponse().withStatus(42))
+            .build());
+        theStubMappings.set(BATCH_SIZE - 1, get(urlEqualTo(BASE_PATH + "/invalid-body"))
+            .willReturn(aResponse().withBody("body").withBodyFile("body.txt"))
+            .build());
+
+        try {
+            new StubBatchRegistrar(mWireMockServer).registerAll(theStubMappings);
+            Assert.fail("Batch containing invalid response definitions should be rejected");
+        } catch (final IllegalArgumentException theException) {
+            LOGGER.info("Batch rejected as expected: {}", theException.getMessage());
+            Assert.assertTrue("Invalid response status should be reported",
+                theException.getMessage().contains("Stub mapping 1 "));
+            Assert.assertTrue("Invalid response body should be reported",
+                theException.getMessage().contains("Stub mapping " + (BATCH_SIZE - 1) + " "));
+        }
+
+        Assert.assertTrue("No stub mappings should be registered",
+            mWireMockServer.listAllStubMappings().getMappings().isEmpty());
+    }
+
+    /**
+     * Tests replacing all stub mappings while requests are being sent to the WireMock server.
+     *
+     * Expected result: No request should go unmatched during the replacement and,
+     * after the replacement, only the new stub mappings should be registered.
+     *
+     * @throws Exception If error occurs sending requests.
+     */
+    @Test
+    public void replaceAllWithoutGapTest() throws Exception {
+        final StubBatchRegistrar theRegistrar = new StubBatchRegistrar(mWireMockServer);
+        theRegistrar.registerAll(createStubMappings(BATCH_SIZE, "old"));
+
+        /* Continuously request a path served by both the old and the new stub mappings. */
+        final AtomicBoolean theReplacedFlag = new AtomicBoolean();
+        final ExecutorService theClientExecutor = Executors.newSingleThreadExecutor();
+        final Future<Integer> theUnmatchedCount = theClientExecutor.submit(() -> {
+            int theCount = 0;
+            while (!theReplacedFlag.get()) {
+                final int theStatusCode = RestAssured
+                    .given()
+                    .accept(ContentType.TEXT)
+                    .when()
+                    .get(BASE_PATH + "/0")
+                    .getStatusCode();
+                if (theStatusCode == HttpStatus.NOT_FOUND.value()) {
+                    theCount++;
+                }
+            }
+            return theCount;
+        });
+
+        try {
+            theRegistrar.replaceAll(createStubMappings(BATCH_SIZE, "new"));
+        } finally {
+            theReplacedFlag.set(true);
+            theClientExecutor.shutdown();
+        }
+
+        Assert.assertEquals("No request should go unmatched during replacement",
+            0, theUnmatchedCount.get(DEFAULT_TIMEOUT, TimeUnit.MILLISECONDS).intValue());
+        Assert.assertEquals("Only new stub mappings should be registered",
+            BATCH_SIZE, mWireMockServer.listAllStubMappings().getMappings().size());
+        assertStubResponds(0, "new");
+    }
+
+    /**
+     * Tests registering a batch of stub mappings where registering one of the stub
+     * mappings fails part-way through the batch.
+     *
+     * Expected result: The stub mappings already registered by the batch should be removed,
+     * leaving the previously registered stub mappings unchanged.
+     */
+    @Test
+    public void failedBatchIsRolledBackTest() {
+        new StubBatchRegistrar(mWireMockServer).registerAll(createStubMappings(1, "existing"));
+        final StubBatchRegistrar theRegistrar = new StubBatchRegistrar(createFailingAdmin(10));
+
+        try {
+            theRegistrar.registerAll(createStubMappings(BATCH_SIZE, "batch"));
+            Assert.fail("Registering batch should fail");
+        } catch (final IllegalStateException theException) {
+            LOGGER.info("Registering batch failed as expected: {}", theException.getMessage());
+        }
+
+        Assert.assertEquals("Only previously registered stub mapping should remain",
+            1, mWireMockServer.listAllStubMappings().getMappings().size());
+        assertStubResponds(0, "existing");
+    }
+
+    /**
+     * Tests replacing more stub mappings than the incremental replace limit.
+     *
+     * Expected result: The old stub mappings should be reset and only the new stub
+     * mappings should be registered.
+     */
+    @Test
+    public void replaceAllAboveIncrementalLimitTest() {
+        final StubBatchRegistrar theRegistrar = new StubBatchRegistrar(mWireMockServer);
+        theRegistrar.setIncrementalReplaceLimit(BATCH_SIZE / 10);
+        theRegistrar.registerAll(createStubMappings(BATCH_SIZE, "old"));
+
+        final long theStartTime = System.currentTimeMillis();
+        theRegistrar.replaceAll(createStubMappings(BATCH_SIZE, "new"));
+        LOGGER.info("Replaced {} stub mappings by resetting in {} ms",
+            BATCH_SIZE, System.currentTimeMillis() - theStartTime);
+
+        Assert.assertEquals("Only new stub mappings should be registered",
+            BATCH_SIZE, mWireMockServer.listAllStubMappings().getMappings().size());
+        assertStubResponds(0, "new");
+        assertStubResponds(BATCH_SIZE - 1, "new");
+    }
+
+    /**
+     * Creates an admin that delegates to the WireMock server but fails when adding
+     * the stub mapping with the supplied ordinal.
+     *
+     * @param inFailingAddOrdinal Ordinal, starting at 1, of the stub mapping addition that fails.
+     * @return Failing admin.
+     */
+    protected Admin createFailingAdmin(final int inFailingAddOrdinal) {
+        final AtomicInteger theAddCount = new AtomicInteger();
+        return (Admin) Proxy.newProxyInstance(Admin.class.getClassLoader(), new Class<?>[] {Admin.class},
+            (theProxy, theMethod, theArguments) -> {
+                if ("addStubMapping".equals(theMethod.getName())
+                    && theAddCount.incrementAndGet() == inFailingAddOrdinal) {
+                    throw new IllegalStateException("Simulated failure adding stub mapping");
+                }
+                try {
+                    return theMethod.invoke(mWireMockServer, theArguments);
+                } catch (final InvocationTargetException theException) {
+                    throw theException.getCause();
+                }
+            });
+    }
+
+    /**
+     * Creates stub mappings for the paths "/wiremocktest/hello/0" and onwards, each
+     * responding with a body containing the supplied body prefix and its number.
+     *
+     * @param inCount Number of stub mappings to create.
+     * @param inBodyPrefix Prefix of response bodies.
+     * @return Stub mappings.
+     */
+    protected List<StubMapping> createStubMappings(final int inCount, final String inBodyPrefix) {
+        final List<StubMapping> theStubMappings = new ArrayList<>(inCount);
+        for (int i = 0; i < inCount; i++) {
+            theStubMappings.add(
+                get(urlEqualTo(BASE_PATH + "/" + i))
+                    .willReturn(
+                        aResponse()
+                            .withStatus(HttpStatus.OK.value())
+                            .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_PLAIN_VALUE)
+                            .withBody(inBodyPrefix + "-" + i)
+                    )
+                    .build()
+            );
+        }
+        return theStubMappings;
+    }
+
+    /**
+     * Sends a request to the path of the stub mapping with the supplied number and
+     * verifies the response.
+     *
+     * @param inStubNumber Number of stub mapping.
+     * @param inBodyPrefix Expected prefix of response body.
+     */
+    protected void assertStubResponds(final int inStubNumber, final String inBodyPrefix) {
+        RestAssured
+            .given()
+            .accept(ContentType.TEXT)
+            .when()
+            .get(BASE_PATH + "/" + inStubNumber)
+            .then()
+            .statusCode(HttpStatus.OK.value())
+            .body(equalTo(inBodyPrefix + "-" + inStubNumber));
+    }
+}
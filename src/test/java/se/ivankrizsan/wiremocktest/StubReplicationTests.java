@@ -0,0 +1,338 @@
+package se.ivankrizsan.wiremocktest;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.HttpAdminClient;
+import com.github.tomakehurst.wiremock.client.MappingBuilder;
+import com.github.tomakehurst.wiremock.core.Admin;
+import com.github.tomakehurst.wiremock.stubbing.StubMapping;
+import com.github.tomakehurst.wiremock.verification.LoggedRequest;
+import io.restassured.RestAssured;
+import io.restassured.http.ContentType;
+import org.hamcrest.Matchers;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+
+/**
+ * Examples on how to replicate stub mappings from a leader WireMock server to
+ * follower WireMock servers and how to verify requests received by any of the servers.
+ * All the servers run on localhost, each on its own port.
+ *
+ * @author Ivan Krizsan
+ */
+public class StubReplicationTests extends AbstractTestBase {
+    /* Constant(s): */
+    protected static final int FOLLOWER_COUNT = 2;
+
+    /* Instance variable(s): */
+    protected WireMockServer mLeaderServer;
+    protected List<WireMockServer> mFollowerServers = new ArrayList<>();
+    protected StubReplicator mStubReplicator;
+
+    /**
+     * Performs preparations before each test.
+     */
+    @Before
+    public void setup() {
+        initializeRestAssuredHttp();
+
+        mLeaderServer = new WireMockServer(wireMockConfig().dynamicPort());
+        mLeaderServer.start();
+        mStubReplicator = new StubReplicator(mLeaderServer);
+
+        for (int i = 0; i < FOLLOWER_COUNT; i++) {
+            final WireMockServer theFollowerServer = new WireMockServer(wireMockConfig().dynamicPort());
+            theFollowerServer.start();
+            mFollowerServers.add(theFollowerServer);
+            mStubReplicator.addFollower(new HttpAdminClient("localhost", theFollowerServer.port()));
+        }
+    }
+
+    /**
+     * Performs cleanup after each test.
+     */
+    @After
+    public void tearDown() {
+        mLeaderServer.stop();
+        for (final WireMockServer theFollowerServer : mFollowerServers) {
+            theFollowerServer.stop();
+        }
+        mFollowerServers.clear();
+    }
+
+    /**
+     * Tests registering a stub mapping with the leader and sending requests to
+     * all the servers.
+     *
+     * Expected result: All the servers should respond according to the stub mapping
+     * and the merged request journal should contain the requests received by all servers.
+     */
+    @Test
+    public void replicatedStubMappingTest() {
+        mStubReplicator.stubFor(createGreetingStub("Hello from the cluster!"));
+
+        for (final WireMockServer theServer : allServers()) {
+            assertGreeting(theServer, "Hello from the cluster!");
+        }
+
+        Assert.assertEquals("Merged journal should contain requests received by all servers",
+            FOLLOWER_COUNT + 1, mStubReplicator.countRequestsMatching(getRequestedFor(urlEqualTo(BASE_PATH))));
+        Assert.assertEquals("Each server should have received one request",
+            1, mFollowerServers.get(0).countRequestsMatching(
+                getRequestedFor(urlEqualTo(BASE_PATH)).build()).getCount());
+    }
+
+    /**
+     * Tests editing and removing a replicated stub mapping.
+     *
+     * Expected result: The edited stub mapping should be served by all servers and,
+     * after removal, no server should match requests.
+     */
+    @Test
+    public void editAndRemoveReplicatedStubMappingTest() {
+        final StubMapping theStubMapping = mStubReplicator.stubFor(createGreetingStub("First greeting"));
+
+        final StubMapping theEditedStubMapping = createGreetingStub("Edited greeting").build();
+        theEditedStubMapping.setId(theStubMapping.getId());
+        mStubReplicator.editStubMapping(theEditedStubMapping);
+        for (final WireMockServer theServer : allServers()) {
+            assertGreeting(theServer, "Edited greeting");
+        }
+
+        mStubReplicator.removeStubMapping(theEditedStubMapping);
+        for (final WireMockServer theServer : allServers()) {
+            Assert.assertTrue("Stub mapping should be removed from all servers",
+                theServer.listAllStubMappings().getMappings().isEmpty());
+        }
+    }
+
+    /**
+     * Tests adding a follower after stub mappings have been registered.
+     *
+     * Expected result: The new follower should receive all existing stub mappings.
+     */
+    @Test
+    public void lateFollowerReceivesExistingStubMappingsTest() {
+        mStubReplicator.stubFor(createGreetingStub("Hello latecomer!"));
+
+        final WireMockServer theLateFollowerServer = new WireMockServer(wireMockConfig().dynamicPort());
+        theLateFollowerServer.start();
+        mFollowerServers.add(theLateFollowerServer);
+        mStubReplicator.addFollower(new HttpAdminClient("localhost", theLateFollowerServer.port()));
+
+        assertGreeting(theLateFollowerServer, "Hello latecomer!");
+    }
+
+    /**
+     * Tests replicating stub mappings to a follower WireMock server running in-process,
+     * which is administered directly instead of using the admin API.
+     *
+     * Expected result: The leader and the in-process follower should each register their
+     * own copy of the stub mapping and stub mappings should be editable and removable
+     * on both servers.
+     */
+    @Test
+    public void inProcessFollowerTest() {
+        final WireMockServer theInProcessFollowerServer = new WireMockServer(wireMockConfig().dynamicPort());
+        theInProcessFollowerServer.start();
+        mFollowerServers.add(theInProcessFollowerServer);
+        mStubReplicator.addFollower(theInProcessFollowerServer);
+
+        final StubMapping theStubMapping = mStubReplicator.stubFor(createGreetingStub("First greeting"));
+        mStubReplicator.stubFor(createGreetingStub("Second greeting").atPriority(10));
+        Assert.assertNotSame("In-process follower should register its own copy of the stub mapping",
+            theStubMapping, theInProcessFollowerServer.listAllStubMappings().getMappings()
+                .stream()
+                .filter(theFollowerStubMapping -> theFollowerStubMapping.getId().equals(theStubMapping.getId()))
+                .findFirst()
+                .orElse(null));
+
+        final StubMapping theEditedStubMapping = createGreetingStub("Edited greeting").build();
+        theEditedStubMapping.setId(theStubMapping.getId());
+        mStubReplicator.editStubMapping(theEditedStubMapping);
+        assertGreeting(mLeaderServer, "Edited greeting");
+        assertGreeting(theInProcessFollowerServer, "Edited greeting");
+
+        mStubReplicator.removeStubMapping(theEditedStubMapping);
+        for (final WireMockServer theServer : allServers()) {
+            Assert.assertEquals("Only one stub mapping should remain on each server",
+                1, theServer.listAllStubMappings().getMappings().size());
+            assertGreeting(theServer, "Second greeting");
+        }
+    }
+
+    /**
+     * Tests registering a stub mapping when one of the followers is not running.
+     *
+     * Expected result: The stub mapping should be registered with the leader and the
+     * running followers and the failure of the stopped follower should be reported.
+     */
+    @Test
+    public void failingFollowerIsReportedTest() {
+        final WireMockServer theStoppedFollowerServer = mFollowerServers.get(0);
+        theStoppedFollowerServer.stop();
+
+        try {
+            mStubReplicator.stubFor(createGreetingStub("Hello survivors!"));
+            Assert.fail("Replication to stopped follower should be reported");
+        } catch (final StubReplicator.ReplicationException theException) {
+            Assert.assertEquals("Only the stopped follower should have failed",
+                1, theException.getFailures().size());
+        }
+
+        assertGreeting(mLeaderServer, "Hello survivors!");
+        for (final WireMockServer theFollowerServer : mFollowerServers.subList(1, mFollowerServers.size())) {
+            assertGreeting(theFollowerServer, "Hello survivors!");
+        }
+    }
+
+    /**
+     * Tests resynchronizing a follower that failed to apply a change.
+     *
+     * Expected result: The follower should be reported as out of sync after the failure
+     * and, after being resynchronized, should respond according to the stub mappings of
+     * the leader, including stub mappings registered directly with the leader.
+     */
+    @Test
+    public void resyncOutOfSyncFollowerTest() {
+        final WireMockServer theFlakyFollowerServer = new WireMockServer(wireMockConfig().dynamicPort());
+        theFlakyFollowerServer.start();
+        mFollowerServers.add(theFlakyFollowerServer);
+        final AtomicBoolean theFailFlag = new AtomicBoolean();
+        final Admin theFlakyFollower = (Admin) Proxy.newProxyInstance(Admin.class.getClassLoader(),
+            new Class<?>[] {Admin.class},
+            (theProxy, theMethod, theArguments) -> {
+                if ("addStubMapping".equals(theMethod.getName()) && theFailFlag.get()) {
+                    throw new IllegalStateException("Simulated follower failure");
+                }
+                try {
+                    return theMethod.invoke(theFlakyFollowerServer, theArguments);
+                } catch (final InvocationTargetException theException) {
+                    throw theException.getCause();
+                }
+            });
+        mStubReplicator.addFollower(theFlakyFollower);
+
+        theFailFlag.set(true);
+        try {
+            mStubReplicator.stubFor(createGreetingStub("Hello again!"));
+            Assert.fail("Replication to failing follower should be reported");
+        } catch (final StubReplicator.ReplicationException theException) {
+            Assert.assertTrue("Failing follower should be reported",
+                theException.getFailures().containsKey(theFlakyFollower));
+        }
+        Assert.assertEquals("Failing follower should be out of sync",
+            Collections.singleton(theFlakyFollower), mStubReplicator.getOutOfSyncFollowers());
+
+        theFailFlag.set(false);
+        mLeaderServer.stubFor(createGreetingStub("Hello directly!").atPriority(10));
+        mStubReplicator.resync(theFlakyFollower);
+
+        Assert.assertTrue("No follower should be out of sync after resync",
+            mStubReplicator.getOutOfSyncFollowers().isEmpty());
+        Assert.assertEquals("Resynchronized follower should have the stub mappings of the leader",
+            mLeaderServer.listAllStubMappings().getMappings().size(),
+            theFlakyFollowerServer.listAllStubMappings().getMappings().size());
+        assertGreeting(theFlakyFollowerServer, "Hello again!");
+    }
+
+    /**
+     * Tests sending a request that does not match any stub mapping to one of
+     * the followers.
+     *
+     * Expected result: The request should be found among the unmatched requests
+     * of the merged request journal.
+     */
+    @Test
+    public void mergedUnmatchedRequestsTest() {
+        mStubReplicator.stubFor(createGreetingStub("Hello!"));
+
+        RestAssured
+            .given()
+            .accept(MediaType.APPLICATION_JSON_VALUE)
+            .when()
+            .get(serverUrl(mFollowerServers.get(1)))
+            .then()
+            .statusCode(HttpStatus.NOT_FOUND.value());
+
+        final List<LoggedRequest> theUnmatchedRequests = mStubReplicator.findAllUnmatchedRequests();
+        Assert.assertEquals("One request should be unmatched", 1, theUnmatchedRequests.size());
+        Assert.assertEquals("Unmatched request should have JSON accept header",
+            MediaType.APPLICATION_JSON_VALUE, theUnmatchedRequests.get(0).getHeader(HttpHeaders.ACCEPT));
+    }
+
+    /**
+     * Creates a stub mapping builder for a greeting response to requests accepting plain text.
+     *
+     * @param inGreeting Greeting in response body.
+     * @return Stub mapping builder.
+     */
+    protected MappingBuilder createGreetingStub(final String inGreeting) {
+        return get(urlEqualTo(BASE_PATH))
+            .withHeader(HttpHeaders.ACCEPT, equalTo(MediaType.TEXT_PLAIN_VALUE))
+            .willReturn(
+                aResponse()
+                    .withStatus(HttpStatus.OK.value())
+                    .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_PLAIN_VALUE)
+                    .withBody(inGreeting)
+            );
+    }
+
+    /**
+     * Sends a request accepting plain text to the supplied server and verifies
+     * that the response contains the supplied greeting.
+     *
+     * @param inServer Server to send request to.
+     * @param inExpectedGreeting Expected greeting.
+     */
+    protected void assertGreeting(final WireMockServer inServer, final String inExpectedGreeting) {
+        RestAssured
+            .given()
+            .accept(ContentType.TEXT)
+            .when()
+            .get(serverUrl(inServer))
+            .then()
+            .statusCode(HttpStatus.OK.value())
+            .body(Matchers.equalTo(inExpectedGreeting));
+    }
+
+    /**
+     * Creates the URL of the base path on the supplied server.
+     *
+     * @param inServer Server.
+     * @return URL.
+     */
+    protected String serverUrl(final WireMockServer inServer) {
+        return "http://localhost:" + inServer.port() + BASE_PATH;
+    }
+
+    /**
+     * Retrieves the leader server followed by all follower servers.
+     *
+     * @return All servers.
+     */
+    protected List<WireMockServer> allServers() {
+        final List<WireMockServer> theServers = new ArrayList<>();
+        theServers.add(mLeaderServer);
+        theServers.addAll(mFollowerServers);
+        return theServers;
+    }
+}
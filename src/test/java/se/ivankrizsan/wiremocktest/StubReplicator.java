@@ -0,0 +1,310 @@
+package se.ivankrizsan.wiremocktest;
+
+import com.github.tomakehurst.wiremock.client.MappingBuilder;
+import com.github.tomakehurst.wiremock.client.RequestPatternBuilder;
+import com.github.tomakehurst.wiremock.core.Admin;
+import com.github.tomakehurst.wiremock.matching.RequestPattern;
+import com.github.tomakehurst.wiremock.stubbing.StubMapping;
+import com.github.tomakehurst.wiremock.verification.LoggedRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.function.Consumer;
+
+/**
+ * Applies stub mapping changes to a leader WireMock server and then pushes them to a number
+ * of follower WireMock servers, for instance when running several WireMock servers behind
+ * a load balancer.
+ * This is a client-side fan-out: only changes made through the replicator are replicated.
+ * Stub mappings registered directly with the leader, for instance using {@code stubFor}
+ * on the leader server or using the admin API of the leader, are not replicated until
+ * the followers are resynchronized with the leader using {@link #resync(Admin)}.
+ * Stub mapping changes are pushed, one change at a time, to each follower using the admin
+ * interface. Each follower receives its own copy of each stub mapping, since WireMock
+ * modifies stub mappings when registering them. If a change cannot be applied to one or
+ * more followers, the change is still applied to the other followers and a
+ * {@link ReplicationException} identifying the failed followers is thrown. The failed
+ * followers are considered out of sync until they have been resynchronized.
+ * A follower that is added after stub mappings have been registered receives
+ * all the stub mappings of the leader.
+ * Request journal queries made through the replicator are answered with the merged
+ * request journals of the leader and all the followers, by querying each server when
+ * the query is made.
+ *
+ * @author Ivan Krizsan
+ */
+public class StubReplicator {
+    /* Constant(s): */
+    private static final Logger LOGGER = LoggerFactory.getLogger(StubReplicator.class);
+
+    /* Instance variable(s): */
+    protected final Admin mLeader;
+    protected final List<Admin> mFollowers = new CopyOnWriteArrayList<>();
+    protected final Set<Admin> mOutOfSyncFollowers = new CopyOnWriteArraySet<>();
+
+    /**
+     * Creates a replicator replicating stub mappings from the supplied leader.
+     * Note that {@code WireMockServer} implements the admin interface and that remote
+     * WireMock servers can be administered using {@code HttpAdminClient}.
+     *
+     * @param inLeader Admin of leader WireMock server.
+     */
+    public StubReplicator(final Admin inLeader) {
+        mLeader = inLeader;
+    }
+
+    /**
+     * Adds a follower WireMock server, replacing its stub mappings with those
+     * of the leader.
+     *
+     * @param inFollower Admin of follower WireMock server.
+     */
+    public synchronized void addFollower(final Admin inFollower) {
+        final int theStubMappingCount = copyLeaderStubMappings(inFollower);
+        mFollowers.add(inFollower);
+        LOGGER.debug("Added follower with {} stub mappings", theStubMappingCount);
+    }
+
+    /**
+     * Removes a follower WireMock server. Its stub mappings are left unchanged.
+     *
+     * @param inFollower Admin of follower WireMock server.
+     */
+    public synchronized void removeFollower(final Admin inFollower) {
+        mFollowers.remove(inFollower);
+        mOutOfSyncFollowers.remove(inFollower);
+    }
+
+    /**
+     * Resynchronizes a follower WireMock server with the leader by replacing the stub
+     * mappings of the follower with those of the leader.
+     * Used to bring followers that failed to apply a change back in sync and to replicate
+     * stub mapping changes made directly on the leader.
+     *
+     * @param inFollower Admin of follower WireMock server.
+     * @throws IllegalArgumentException If the supplied admin is not a follower of this replicator.
+     */
+    public synchronized void resync(final Admin inFollower) {
+        if (!mFollowers.contains(inFollower)) {
+            throw new IllegalArgumentException("Not a follower: " + inFollower);
+        }
+        final int theStubMappingCount = copyLeaderStubMappings(inFollower);
+        mOutOfSyncFollowers.remove(inFollower);
+        LOGGER.debug("Resynchronized follower {} with {} stub mappings", inFollower, theStubMappingCount);
+    }
+
+    /**
+     * Retrieves the followers that failed to apply a change and have not been
+     * resynchronized since.
+     *
+     * @return Admins of out-of-sync followers.
+     */
+    public Set<Admin> getOutOfSyncFollowers() {
+        return Collections.unmodifiableSet(mOutOfSyncFollowers);
+    }
+
+    /**
+     * Registers the stub mapping built by the supplied builder with the leader
+     * and all followers.
+     *
+     * @param inMappingBuilder Builder of stub mapping.
+     * @return Registered stub mapping.
+     * @throws ReplicationException If the stub mapping could not be registered with one or more followers.
+     */
+    public StubMapping stubFor(final MappingBuilder inMappingBuilder) {
+        final StubMapping theStubMapping = inMappingBuilder.build();
+        addStubMapping(theStubMapping);
+        return theStubMapping;
+    }
+
+    /**
+     * Registers the supplied stub mapping with the leader and all followers.
+     *
+     * @param inStubMapping Stub mapping.
+     * @throws ReplicationException If the stub mapping could not be registered with one or more followers.
+     */
+    public synchronized void addStubMapping(final StubMapping inStubMapping) {
+        /* Serialize before the leader modifies the stub mapping when registering it. */
+        final String theStubMappingJson = StubMapping.buildJsonStringFor(inStubMapping);
+        mLeader.addStubMapping(inStubMapping);
+        replicate(theFollower -> theFollower.addStubMapping(StubMapping.buildFrom(theStubMappingJson)));
+    }
+
+    /**
+     * Replaces the stub mapping with the same id as the supplied stub mapping on
+     * the leader and all followers.
+     *
+     * @param inStubMapping Edited stub mapping.
+     * @throws ReplicationException If the stub mapping could not be edited on one or more followers.
+     */
+    public synchronized void editStubMapping(final StubMapping inStubMapping) {
+        /* Serialize before the leader modifies the stub mapping when registering it. */
+        final String theStubMappingJson = StubMapping.buildJsonStringFor(inStubMapping);
+        mLeader.editStubMapping(inStubMapping);
+        replicate(theFollower -> theFollower.editStubMapping(StubMapping.buildFrom(theStubMappingJson)));
+    }
+
+    /**
+     * Removes the supplied stub mapping from the leader and all followers.
+     *
+     * @param inStubMapping Stub mapping to remove.
+     * @throws ReplicationException If the stub mapping could not be removed from one or more followers.
+     */
+    public synchronized void removeStubMapping(final StubMapping inStubMapping) {
+        final String theStubMappingJson = StubMapping.buildJsonStringFor(inStubMapping);
+        mLeader.removeStubMapping(inStubMapping);
+        replicate(theFollower -> theFollower.removeStubMapping(StubMapping.buildFrom(theStubMappingJson)));
+    }
+
+    /**
+     * Removes all stub mappings, request journals and scenario states from the
+     * leader and all followers.
+     *
+     * @throws ReplicationException If one or more followers could not be reset.
+     */
+    public synchronized void resetAll() {
+        mLeader.resetAll();
+        replicate(Admin::resetAll);
+    }
+
+    /**
+     * Counts the requests matching the supplied pattern received by the leader
+     * and all followers.
+     *
+     * @param inRequestPatternBuilder Builder of request pattern.
+     * @return Number of matching requests.
+     */
+    public int countRequestsMatching(final RequestPatternBuilder inRequestPatternBuilder) {
+        final RequestPattern theRequestPattern = inRequestPatternBuilder.build();
+        int theCount = 0;
+        for (final Admin theServer : allServers()) {
+            theCount += theServer.countRequestsMatching(theRequestPattern).getCount();
+        }
+        return theCount;
+    }
+
+    /**
+     * Finds the requests matching the supplied pattern received by the leader
+     * and all followers.
+     *
+     * @param inRequestPatternBuilder Builder of request pattern.
+     * @return Matching requests, leader requests first followed by the requests of each follower.
+     */
+    public List<LoggedRequest> findRequestsMatching(final RequestPatternBuilder inRequestPatternBuilder) {
+        final RequestPattern theRequestPattern = inRequestPatternBuilder.build();
+        final List<LoggedRequest> theRequests = new ArrayList<>();
+        for (final Admin theServer : allServers()) {
+            theRequests.addAll(theServer.findRequestsMatching(theRequestPattern).getRequests());
+        }
+        return theRequests;
+    }
+
+    /**
+     * Finds the requests not matched by any stub mapping received by the leader
+     * and all followers.
+     *
+     * @return Unmatched requests, leader requests first followed by the requests of each follower.
+     */
+    public List<LoggedRequest> findAllUnmatchedRequests() {
+        final List<LoggedRequest> theRequests = new ArrayList<>();
+        for (final Admin theServer : allServers()) {
+            theRequests.addAll(theServer.findUnmatchedRequests().getRequests());
+        }
+        return theRequests;
+    }
+
+    /**
+     * Applies the supplied change to all followers. A follower failing to apply the change
+     * does not prevent the change from being applied to the remaining followers.
+     *
+     * @param inChange Change to apply to each follower.
+     * @throws ReplicationException If one or more followers failed to apply the change.
+     */
+    protected void replicate(final Consumer<Admin> inChange) {
+        final Map<Admin, Exception> theFailures = new LinkedHashMap<>();
+        for (final Admin theFollower : mFollowers) {
+            try {
+                inChange.accept(theFollower);
+            } catch (final Exception theException) {
+                /* Catches all exceptions, since the HTTP admin client may rethrow I/O exceptions unchecked. */
+                LOGGER.warn("Replicating change to follower {} failed", theFollower, theException);
+                theFailures.put(theFollower, theException);
+                mOutOfSyncFollowers.add(theFollower);
+            }
+        }
+        if (!theFailures.isEmpty()) {
+            throw new ReplicationException(theFailures);
+        }
+    }
+
+    /**
+     * Replaces the stub mappings of the supplied follower with copies of the stub mappings
+     * of the leader.
+     *
+     * @param inFollower Admin of follower WireMock server.
+     * @return Number of stub mappings copied.
+     */
+    protected int copyLeaderStubMappings(final Admin inFollower) {
+        inFollower.resetMappings();
+        final List<StubMapping> theLeaderStubMappings = mLeader.listAllStubMappings().getMappings();
+        /* Stub mappings are listed most recent first, so add them in reverse to keep the order. */
+        for (int i = theLeaderStubMappings.size() - 1; i >= 0; i--) {
+            inFollower.addStubMapping(copyOf(theLeaderStubMappings.get(i)));
+        }
+        return theLeaderStubMappings.size();
+    }
+
+    /**
+     * Creates a copy of the supplied stub mapping, with the same id, by serializing it to JSON.
+     *
+     * @param inStubMapping Stub mapping to copy.
+     * @return Copy of stub mapping.
+     */
+    protected static StubMapping copyOf(final StubMapping inStubMapping) {
+        return StubMapping.buildFrom(StubMapping.buildJsonStringFor(inStubMapping));
+    }
+
+    /**
+     * Retrieves the leader followed by all followers.
+     *
+     * @return Admins of all servers.
+     */
+    protected List<Admin> allServers() {
+        final List<Admin> theServers = new ArrayList<>(mFollowers.size() + 1);
+        theServers.add(mLeader);
+        theServers.addAll(mFollowers);
+        return theServers;
+    }
+
+    /**
+     * Thrown when a change has been applied to the leader but could not be applied to one
+     * or more followers. The followers that failed are out of sync with the leader until
+     * resynchronized using {@link StubReplicator#resync(Admin)}.
+     */
+    public static class ReplicationException extends RuntimeException {
+        private final Map<Admin, Exception> mFailures;
+
+        /**
+         * Creates an exception reporting the supplied follower failures.
+         *
+         * @param inFailures Exceptions by follower that failed to apply the change.
+         */
+        public ReplicationException(final Map<Admin, Exception> inFailures) {
+            super("Replicating change failed on " + inFailures.size() + " follower(s): " + inFailures);
+            mFailures = Collections.unmodifiableMap(new LinkedHashMap<>(inFailures));
+            inFailures.values().forEach(this::addSuppressed);
+        }
+
+        public Map<Admin, Exception> getFailures() {
+            return mFailures;
+        }
+    }
+}
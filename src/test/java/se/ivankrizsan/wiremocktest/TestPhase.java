@@ -0,0 +1,39 @@
+package se.ivankrizsan.wiremocktest;
+
+/**
+ * Phases of a test for which timings are recorded by {@link TestPhaseTimings}.
+ *
+ * @author Ivan Krizsan
+ */
+public enum TestPhase {
+    /** Creating and starting a WireMock server. */
+    SERVER_STARTUP("server-startup"),
+    /** Warming up a started WireMock server by replaying requests against it. */
+    SERVER_WARMUP("server-warmup"),
+    /** Stopping a WireMock server and inspecting its request journal. */
+    SERVER_SHUTDOWN("server-shutdown"),
+    /** Loading keystores and truststores. */
+    KEYSTORE_LOADING("keystore-loading"),
+    /** Sending requests and receiving responses, including any TLS handshakes. */
+    REQUEST_EXECUTION("request-execution"),
+    /** Establishing TLS connections, which is also part of any enclosing request execution. */
+    TLS_HANDSHAKE("tls-handshake"),
+    /** The entire test, including before and after methods. */
+    TOTAL("total");
+
+    /* Instance variable(s): */
+    private final String mPhaseName;
+
+    /**
+     * Creates a test phase with the supplied name.
+     *
+     * @param inPhaseName Name of phase used in reports and threshold properties.
+     */
+    TestPhase(final String inPhaseName) {
+        mPhaseName = inPhaseName;
+    }
+
+    public String getPhaseName() {
+        return mPhaseName;
+    }
+}
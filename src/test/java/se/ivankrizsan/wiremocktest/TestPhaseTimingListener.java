@@ -0,0 +1,31 @@
+package se.ivankrizsan.wiremocktest;
+
+import org.junit.runner.Result;
+import org.junit.runner.notification.RunListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * JUnit run listener that writes the phase timings recorded by {@link TestPhaseTimings}
+ * to a CSV report when a test run has finished.
+ * The location of the report is set by the system property "phase.timing.report".
+ * The listener is registered with the Surefire plugin in the Maven POM.
+ *
+ * @author Ivan Krizsan
+ */
+public class TestPhaseTimingListener extends RunListener {
+    /* Constant(s): */
+    private static final Logger LOGGER = LoggerFactory.getLogger(TestPhaseTimingListener.class);
+    public static final String REPORT_PROPERTY = "phase.timing.report";
+    protected static final String DEFAULT_REPORT_LOCATION = "target/test-phase-timings.csv";
+
+    @Override
+    public void testRunFinished(final Result inResult) throws Exception {
+        final Path theReportFile = Paths.get(System.getProperty(REPORT_PROPERTY, DEFAULT_REPORT_LOCATION));
+        TestPhaseTimings.writeCsvReport(theReportFile);
+        LOGGER.info("Test phase timing report written to {}", theReportFile.toAbsolutePath());
+    }
+}
@@ -0,0 +1,66 @@
+package se.ivankrizsan.wiremocktest;
+
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * JUnit rule that attributes the phase timings recorded by {@link TestPhaseTimings}
+ * during a test, including its before and after methods, to that test.
+ * The total duration of each test is also recorded.
+ * A test fails if the total duration of one of its phases exceeds the threshold set
+ * for the phase, in milliseconds, by a system property named "phase.threshold." followed
+ * by the phase name, for instance "phase.threshold.server-startup".
+ *
+ * @author Ivan Krizsan
+ */
+public class TestPhaseTimingRule implements TestRule {
+    /* Constant(s): */
+    public static final String THRESHOLD_PROPERTY_PREFIX = "phase.threshold.";
+
+    @Override
+    public Statement apply(final Statement inBase, final Description inDescription) {
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                TestPhaseTimings.startTest(inDescription.getClassName(), inDescription.getMethodName());
+                final long theStartNanos = System.nanoTime();
+                try {
+                    inBase.evaluate();
+                } finally {
+                    TestPhaseTimings.record(TestPhase.TOTAL, System.nanoTime() - theStartNanos);
+                    TestPhaseTimings.endTest();
+                }
+                verifyThresholds(inDescription);
+            }
+        };
+    }
+
+    /**
+     * Verifies that no phase of the supplied test exceeded its threshold.
+     *
+     * @param inDescription Description of test.
+     * @throws AssertionError If one or more phases exceeded their thresholds.
+     */
+    protected void verifyThresholds(final Description inDescription) {
+        final Map<TestPhase, TestPhaseTimings.PhaseStatistics> theTimings =
+            TestPhaseTimings.getTestTimings(inDescription.getClassName(), inDescription.getMethodName());
+        final List<String> theExceededThresholds = new ArrayList<>();
+        for (final Map.Entry<TestPhase, TestPhaseTimings.PhaseStatistics> thePhaseEntry : theTimings.entrySet()) {
+            final Long theThresholdMillis =
+                Long.getLong(THRESHOLD_PROPERTY_PREFIX + thePhaseEntry.getKey().getPhaseName());
+            final long theActualMillis = thePhaseEntry.getValue().getTotalNanos() / 1_000_000;
+            if (theThresholdMillis != null && theActualMillis > theThresholdMillis) {
+                theExceededThresholds.add(thePhaseEntry.getKey().getPhaseName() + " took " + theActualMillis
+                    + " ms, threshold " + theThresholdMillis + " ms");
+            }
+        }
+        if (!theExceededThresholds.isEmpty()) {
+            throw new AssertionError("Test phase thresholds exceeded: " + theExceededThresholds);
+        }
+    }
+}
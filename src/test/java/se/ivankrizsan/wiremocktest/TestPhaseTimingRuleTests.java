@@ -0,0 +1,140 @@
+package se.ivankrizsan.wiremocktest;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests of the recording of test phase timings and of the verification of
+ * test phase thresholds.
+ *
+ * @author Ivan Krizsan
+ */
+public class TestPhaseTimingRuleTests {
+    /* Constant(s): */
+    protected static final String THRESHOLD_PROPERTY =
+        TestPhaseTimingRule.THRESHOLD_PROPERTY_PREFIX + TestPhase.SERVER_STARTUP.getPhaseName();
+    protected static final String TEST_CLASS_NAME = TestPhaseTimingRuleTests.class.getName() + "$Example";
+
+    /* Instance variable(s): */
+    protected String mOriginalThreshold;
+
+    /**
+     * Performs preparations before each test.
+     */
+    @Before
+    public void setup() {
+        mOriginalThreshold = System.getProperty(THRESHOLD_PROPERTY);
+        System.clearProperty(THRESHOLD_PROPERTY);
+    }
+
+    /**
+     * Performs cleanup after each test.
+     */
+    @After
+    public void tearDown() {
+        /* Keep the timings of the example tests out of the test phase timing report. */
+        TestPhaseTimings.clear(TEST_CLASS_NAME);
+        if (mOriginalThreshold != null) {
+            System.setProperty(THRESHOLD_PROPERTY, mOriginalThreshold);
+        } else {
+            System.clearProperty(THRESHOLD_PROPERTY);
+        }
+    }
+
+    /**
+     * Tests evaluating a test in which the server startup phase is timed.
+     *
+     * Expected result: Server startup and total timings should be attributed to the test
+     * and written to the report.
+     *
+     * @throws Throwable If error occurs evaluating the test or writing the report.
+     */
+    @Test
+    public void phaseTimingsAttributedToTestTest() throws Throwable {
+        evaluateTestWithServerStartup("attributedTest", 1);
+
+        final Map<TestPhase, TestPhaseTimings.PhaseStatistics> theTimings =
+            TestPhaseTimings.getTestTimings(TEST_CLASS_NAME, "attributedTest");
+        Assert.assertEquals("Server startup should be timed once",
+            1, theTimings.get(TestPhase.SERVER_STARTUP).getCount());
+        Assert.assertTrue("Total duration should be timed", theTimings.containsKey(TestPhase.TOTAL));
+
+        final Path theReportFile = Files.createTempFile("test-phase-timings", ".csv");
+        try {
+            TestPhaseTimings.writeCsvReport(theReportFile);
+            final List<String> theReportLines = Files.readAllLines(theReportFile);
+            Assert.assertTrue("Report should contain test phase row", theReportLines
+                .stream()
+                .anyMatch(theLine -> theLine.startsWith(TEST_CLASS_NAME + ",attributedTest,server-startup,1,")));
+            Assert.assertTrue("Report should contain test class row", theReportLines
+                .stream()
+                .anyMatch(theLine -> theLine.startsWith(TEST_CLASS_NAME + ",*,server-startup,")));
+        } finally {
+            Files.delete(theReportFile);
+        }
+    }
+
+    /**
+     * Tests evaluating a test in which the server startup phase exceeds its threshold.
+     *
+     * Expected result: The test should fail with an assertion error.
+     *
+     * @throws Throwable If error occurs evaluating the test.
+     */
+    @Test
+    public void phaseThresholdExceededTest() throws Throwable {
+        System.setProperty(THRESHOLD_PROPERTY, "5");
+
+        try {
+            evaluateTestWithServerStartup("slowTest", 50);
+            Assert.fail("Test exceeding server startup threshold should fail");
+        } catch (final AssertionError theError) {
+            Assert.assertTrue("Failure should name exceeded phase",
+                theError.getMessage().contains(TestPhase.SERVER_STARTUP.getPhaseName()));
+        }
+    }
+
+    /**
+     * Tests evaluating a test in which the server startup phase is within its threshold.
+     *
+     * Expected result: The test should pass.
+     *
+     * @throws Throwable If error occurs evaluating the test.
+     */
+    @Test
+    public void phaseThresholdNotExceededTest() throws Throwable {
+        System.setProperty(THRESHOLD_PROPERTY, "10000");
+
+        evaluateTestWithServerStartup("fastTest", 1);
+    }
+
+    /**
+     * Evaluates a test, wrapped by the test phase timing rule, that times a server
+     * startup phase of the supplied duration.
+     *
+     * @param inTestName Name of test.
+     * @param inServerStartupMillis Duration of server startup phase in milliseconds.
+     * @throws Throwable If the test fails.
+     */
+    protected void evaluateTestWithServerStartup(final String inTestName, final long inServerStartupMillis)
+        throws Throwable {
+        final Statement theTest = new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                TestPhaseTimings.time(TestPhase.SERVER_STARTUP, () -> Thread.sleep(inServerStartupMillis));
+            }
+        };
+        new TestPhaseTimingRule()
+            .apply(theTest, Description.createTestDescription(TEST_CLASS_NAME, inTestName))
+            .evaluate();
+    }
+}
@@ -0,0 +1,305 @@
+package se.ivankrizsan.wiremocktest;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Records how long each phase of each test takes, for instance WireMock server startup,
+ * keystore loading and request execution.
+ * Timings are attributed to the test currently executing on the recording thread, which
+ * is set by {@link TestPhaseTimingRule}. Timings recorded on a thread on which no test
+ * is executing are attributed to an unknown test.
+ * Typical use:
+ * {@code
+ *     TestPhaseTimings.time(TestPhase.SERVER_STARTUP, () -> mWireMockServer.start());
+ * }
+ *
+ * @author Ivan Krizsan
+ */
+public final class TestPhaseTimings {
+    /* Constant(s): */
+    protected static final String UNKNOWN = "<unknown>";
+    protected static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    /* Class variable(s): */
+    private static final ThreadLocal<String[]> sCurrentTest = new ThreadLocal<>();
+    /** Timings by test class name and test name, in the order tests were executed. */
+    private static final Map<String, Map<String, Map<TestPhase, PhaseStatistics>>> sTimings =
+        new LinkedHashMap<>();
+
+    /**
+     * Hidden constructor, since this class only contains static methods.
+     */
+    private TestPhaseTimings() {
+    }
+
+    /**
+     * Sets the test executing on the current thread.
+     *
+     * @param inTestClassName Name of test class.
+     * @param inTestName Name of test method.
+     */
+    public static void startTest(final String inTestClassName, final String inTestName) {
+        sCurrentTest.set(new String[] {inTestClassName, inTestName});
+    }
+
+    /**
+     * Clears the test executing on the current thread.
+     */
+    public static void endTest() {
+        sCurrentTest.remove();
+    }
+
+    /**
+     * Performs the supplied action and records its duration as the supplied phase of
+     * the test executing on the current thread. The duration is recorded also if the
+     * action throws an exception.
+     *
+     * @param inPhase Test phase.
+     * @param inAction Action to time.
+     * @param <E> Type of exception thrown by action.
+     * @throws E If the action throws an exception.
+     */
+    public static <E extends Exception> void time(final TestPhase inPhase, final PhaseAction<E> inAction)
+        throws E {
+        final long theStartNanos = System.nanoTime();
+        try {
+            inAction.run();
+        } finally {
+            record(inPhase, System.nanoTime() - theStartNanos);
+        }
+    }
+
+    /**
+     * Retrieves the result of the supplied supplier and records the time it took as the supplied
+     * phase of the test executing on the current thread. The duration is recorded also if
+     * the supplier throws an exception.
+     *
+     * @param inPhase Test phase.
+     * @param inSupplier Supplier to time.
+     * @param <T> Type of result.
+     * @param <E> Type of exception thrown by supplier.
+     * @return Result of supplier.
+     * @throws E If the supplier throws an exception.
+     */
+    public static <T, E extends Exception> T timeAndGet(final TestPhase inPhase,
+        final PhaseSupplier<T, E> inSupplier) throws E {
+        final long theStartNanos = System.nanoTime();
+        try {
+            return inSupplier.get();
+        } finally {
+            record(inPhase, System.nanoTime() - theStartNanos);
+        }
+    }
+
+    /**
+     * Records a timing of the supplied phase of the test executing on the current thread.
+     *
+     * @param inPhase Test phase.
+     * @param inNanos Duration in nanoseconds.
+     */
+    public static void record(final TestPhase inPhase, final long inNanos) {
+        final String[] theCurrentTest = sCurrentTest.get();
+        if (theCurrentTest != null) {
+            record(theCurrentTest[0], theCurrentTest[1], inPhase, inNanos);
+        } else {
+            record(UNKNOWN, UNKNOWN, inPhase, inNanos);
+        }
+    }
+
+    /**
+     * Records a timing of the supplied phase of the supplied test.
+     *
+     * @param inTestClassName Name of test class.
+     * @param inTestName Name of test method.
+     * @param inPhase Test phase.
+     * @param inNanos Duration in nanoseconds.
+     */
+    public static synchronized void record(final String inTestClassName, final String inTestName,
+        final TestPhase inPhase, final long inNanos) {
+        sTimings
+            .computeIfAbsent(inTestClassName, theKey -> new LinkedHashMap<>())
+            .computeIfAbsent(inTestName, theKey -> new EnumMap<>(TestPhase.class))
+            .computeIfAbsent(inPhase, theKey -> new PhaseStatistics())
+            .add(inNanos);
+    }
+
+    /**
+     * Retrieves the timings of the phases of the supplied test.
+     *
+     * @param inTestClassName Name of test class.
+     * @param inTestName Name of test method.
+     * @return Copy of phase statistics by phase, empty if no timings recorded.
+     */
+    public static synchronized Map<TestPhase, PhaseStatistics> getTestTimings(final String inTestClassName,
+        final String inTestName) {
+        final Map<TestPhase, PhaseStatistics> theTimings = new EnumMap<>(TestPhase.class);
+        final Map<String, Map<TestPhase, PhaseStatistics>> theClassTimings = sTimings.get(inTestClassName);
+        if (theClassTimings != null && theClassTimings.containsKey(inTestName)) {
+            theClassTimings.get(inTestName).forEach((thePhase, theStatistics) ->
+                theTimings.put(thePhase, theStatistics.copy()));
+        }
+        return theTimings;
+    }
+
+    /**
+     * Writes a CSV report of all recorded timings to the supplied file.
+     * The report contains one row per phase of each test and one row per phase of
+     * each test class, the latter having "*" as test name.
+     *
+     * @param inReportFile File to write report to.
+     * @throws IOException If error occurs writing report.
+     */
+    public static synchronized void writeCsvReport(final Path inReportFile) throws IOException {
+        if (inReportFile.getParent() != null) {
+            Files.createDirectories(inReportFile.getParent());
+        }
+        try (Writer theWriter = Files.newBufferedWriter(inReportFile, StandardCharsets.UTF_8)) {
+            theWriter.write("class,test,phase,count,total_ms,max_ms\n");
+            for (final Map.Entry<String, Map<String, Map<TestPhase, PhaseStatistics>>> theClassEntry
+                : sTimings.entrySet()) {
+                final Map<TestPhase, PhaseStatistics> theClassTotals = new EnumMap<>(TestPhase.class);
+                for (final Map.Entry<String, Map<TestPhase, PhaseStatistics>> theTestEntry
+                    : theClassEntry.getValue().entrySet()) {
+                    for (final Map.Entry<TestPhase, PhaseStatistics> thePhaseEntry
+                        : theTestEntry.getValue().entrySet()) {
+                        writeCsvRow(theWriter, theClassEntry.getKey(), theTestEntry.getKey(),
+                            thePhaseEntry.getKey(), thePhaseEntry.getValue());
+                        theClassTotals
+                            .computeIfAbsent(thePhaseEntry.getKey(), theKey -> new PhaseStatistics())
+                            .add(thePhaseEntry.getValue());
+                    }
+                }
+                for (final Map.Entry<TestPhase, PhaseStatistics> thePhaseEntry : theClassTotals.entrySet()) {
+                    writeCsvRow(theWriter, theClassEntry.getKey(), "*",
+                        thePhaseEntry.getKey(), thePhaseEntry.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Clears all recorded timings.
+     */
+    public static synchronized void clear() {
+        sTimings.clear();
+    }
+
+    /**
+     * Clears the recorded timings of all tests in the supplied test class.
+     *
+     * @param inTestClassName Name of test class.
+     */
+    public static synchronized void clear(final String inTestClassName) {
+        sTimings.remove(inTestClassName);
+    }
+
+    /**
+     * Writes one row of the CSV report.
+     *
+     * @param inWriter Writer to write row to.
+     * @param inTestClassName Name of test class.
+     * @param inTestName Name of test method, or "*" for the entire test class.
+     * @param inPhase Test phase.
+     * @param inStatistics Statistics of phase.
+     * @throws IOException If error occurs writing row.
+     */
+    private static void writeCsvRow(final Writer inWriter, final String inTestClassName, final String inTestName,
+        final TestPhase inPhase, final PhaseStatistics inStatistics) throws IOException {
+        inWriter.write(String.format("%s,%s,%s,%d,%.3f,%.3f%n",
+            inTestClassName, inTestName, inPhase.getPhaseName(), inStatistics.getCount(),
+            inStatistics.getTotalNanos() / NANOS_PER_MILLI, inStatistics.getMaxNanos() / NANOS_PER_MILLI));
+    }
+
+    /**
+     * Number of timings, total duration and maximum duration of a test phase.
+     */
+    public static final class PhaseStatistics {
+        private long mCount;
+        private long mTotalNanos;
+        private long mMaxNanos;
+
+        public long getCount() {
+            return mCount;
+        }
+
+        public long getTotalNanos() {
+            return mTotalNanos;
+        }
+
+        public long getMaxNanos() {
+            return mMaxNanos;
+        }
+
+        /**
+         * Adds a timing.
+         *
+         * @param inNanos Duration in nanoseconds.
+         */
+        void add(final long inNanos) {
+            mCount++;
+            mTotalNanos += inNanos;
+            mMaxNanos = Math.max(mMaxNanos, inNanos);
+        }
+
+        /**
+         * Adds all timings of the supplied statistics.
+         *
+         * @param inStatistics Statistics to add.
+         */
+        void add(final PhaseStatistics inStatistics) {
+            mCount += inStatistics.mCount;
+            mTotalNanos += inStatistics.mTotalNanos;
+            mMaxNanos = Math.max(mMaxNanos, inStatistics.mMaxNanos);
+        }
+
+        /**
+         * Creates a copy of these statistics.
+         *
+         * @return Copy.
+         */
+        PhaseStatistics copy() {
+            final PhaseStatistics theCopy = new PhaseStatistics();
+            theCopy.add(this);
+            return theCopy;
+        }
+    }
+
+    /**
+     * Action of a test phase that is to be timed.
+     *
+     * @param <E> Type of exception thrown by action.
+     */
+    @FunctionalInterface
+    public interface PhaseAction<E extends Exception> {
+        /**
+         * Performs the action.
+         *
+         * @throws E If error occurs performing action.
+         */
+        void run() throws E;
+    }
+
+    /**
+     * Supplier of the result of a test phase that is to be timed.
+     *
+     * @param <T> Type of result.
+     * @param <E> Type of exception thrown by supplier.
+     */
+    @FunctionalInterface
+    public interface PhaseSupplier<T, E extends Exception> {
+        /**
+         * Retrieves the result.
+         *
+         * @return Result.
+         * @throws E If error occurs retrieving result.
+         */
+        T get() throws E;
+    }
+}
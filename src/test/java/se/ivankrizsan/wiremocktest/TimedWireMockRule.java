@@ -0,0 +1,45 @@
+package se.ivankrizsan.wiremocktest;
+
+import com.github.tomakehurst.wiremock.core.Options;
+import com.github.tomakehurst.wiremock.junit.WireMockRule;
+
+/**
+ * WireMock JUnit rule that times the startup and shutdown of the WireMock server as
+ * the server startup and server shutdown phases of the current test.
+ * For the timings to be attributed to the test, the {@link TestPhaseTimingRule} must be
+ * applied outside of this rule, which is the case when this rule is declared in a subclass
+ * of {@link AbstractTestBase}, since JUnit applies rules of superclasses outside of rules
+ * of subclasses.
+ *
+ * @author Ivan Krizsan
+ */
+public class TimedWireMockRule extends WireMockRule {
+
+    /**
+     * Creates a rule with a WireMock server configured using the supplied options.
+     *
+     * @param inOptions WireMock server options.
+     */
+    public TimedWireMockRule(final Options inOptions) {
+        super(inOptions);
+    }
+
+    /**
+     * Creates a rule with a WireMock server listening for HTTP requests on the supplied port.
+     *
+     * @param inPort HTTP port.
+     */
+    public TimedWireMockRule(final int inPort) {
+        super(inPort);
+    }
+
+    @Override
+    public void start() {
+        TestPhaseTimings.time(TestPhase.SERVER_STARTUP, super::start);
+    }
+
+    @Override
+    public void stop() {
+        TestPhaseTimings.time(TestPhase.SERVER_SHUTDOWN, super::stop);
+    }
+}
@@ -0,0 +1,45 @@
+package se.ivankrizsan.wiremocktest;
+
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.conn.ssl.X509HostnameVerifier;
+import org.apache.http.protocol.HttpContext;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * SSL socket factory, of the old deprecated type that REST Assured is able to use, that records
+ * the time it takes to establish TLS connections as the {@link TestPhase#TLS_HANDSHAKE} phase
+ * of the current test.
+ * The TLS socket is layered over the connected plain socket, and the TLS handshake is performed,
+ * on the thread sending the request, before the socket is returned. The timing is thus recorded
+ * on the calling thread while the test sending the request is executing, and it includes
+ * the TLS handshake and the hostname verification but not connecting the plain socket.
+ * The handshake is timed here rather than in a {@code javax.net.ssl.SSLSocketFactory}, since
+ * this factory starts the handshake of the sockets created by such a factory and starting
+ * the handshake of a socket twice starts a new handshake.
+ *
+ * @author Ivan Krizsan
+ */
+@SuppressWarnings("deprecation")
+public class TimingSSLSocketFactory extends SSLSocketFactory {
+
+    /**
+     * Creates a timing SSL socket factory creating sockets using the supplied SSL context and
+     * verifying hostnames using the supplied hostname verifier.
+     *
+     * @param inSSLContext SSL context, typically configured with the client keystore and truststore.
+     * @param inHostnameVerifier Hostname verifier.
+     */
+    public TimingSSLSocketFactory(final SSLContext inSSLContext, final X509HostnameVerifier inHostnameVerifier) {
+        super(inSSLContext, inHostnameVerifier);
+    }
+
+    @Override
+    public Socket createLayeredSocket(final Socket inSocket, final String inTarget, final int inPort,
+        final HttpContext inContext) throws IOException {
+        return TestPhaseTimings.timeAndGet(TestPhase.TLS_HANDSHAKE,
+            () -> super.createLayeredSocket(inSocket, inTarget, inPort, inContext));
+    }
+}
@@ -19,6 +19,7 @@ import static com.github.tomakehurst.wiremock.client.WireMock.get;
 import static com.github.tomakehurst.wiremock.client.WireMock.stubFor;
 import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
 import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+import static io.restassured.config.RestAssuredConfig.newConfig;
 
 /**
  * Examples on how to use HTTPS without client authentication with WireMock
@@ -32,7 +33,7 @@ public class WireMockHttpsNoClientAuthTests extends AbstractTestBase {
 
     /* Instance variable(s): */
     @Rule
-    public WireMockRule mWireMockRule = new WireMockRule(wireMockConfig()
+    public WireMockRule mWireMockRule = new TimedWireMockRule(wireMockConfig()
         .httpsPort(HTTPS_ENDPOINT_PORT)
         .keystorePath(SERVER_KEYSTORE_PATH)
         .keystorePassword(SERVER_KEYSTORE_PASSWORD));
@@ -50,9 +51,11 @@ public class WireMockHttpsNoClientAuthTests extends AbstractTestBase {
      * the mock server expects. Client authentication is not used.
      *
      * Expected result: A response containing a greeting should be received.
+     *
+     * @throws Exception If error occurs creating the SSL configuration.
      */
     @Test
-    public void successfulNoClientAuthTest() {
+    public void successfulNoClientAuthTest() throws Exception {
         /*
          * Setup test HTTPS mock as to expect one request to /wiremock/test with an Accept
          * header that has the value "text/plain".
@@ -77,11 +80,12 @@ public class WireMockHttpsNoClientAuthTests extends AbstractTestBase {
          * Since a self-signed certificate is used, HTTPS validation need to be relaxed.
          * This is needed if your certificate is not signed by a CA or if the
          * name in the certificate does not match the DNS name of the host.
+         * The SSL configuration is equivalent to using {@code relaxedHTTPSValidation} and
+         * {@code keyStore} but also records the TLS handshake timings.
          */
         final Response theResponse = RestAssured
             .given()
-            .relaxedHTTPSValidation()
-            .keyStore(CLIENT_KEYSTORE_PATH, CLIENT_KEYSTORE_PASSWORD)
+            .config(newConfig().sslConfig(createRelaxedTimingSSLConfig(CLIENT_KEYSTORE_PATH, CLIENT_KEYSTORE_PASSWORD)))
             .contentType(ContentType.TEXT)
             .accept(ContentType.TEXT)
             .when()
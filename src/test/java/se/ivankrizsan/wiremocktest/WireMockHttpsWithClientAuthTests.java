@@ -26,7 +26,6 @@ import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
-import java.io.FileInputStream;
 import java.security.KeyStore;
 import java.util.List;
 
@@ -73,7 +72,7 @@ public class WireMockHttpsWithClientAuthTests extends AbstractTestBase {
             .trustStorePath(SERVER_TRUSTSTORE_PATH)
             .trustStorePassword(SERVER_TRUSTSTORE_PASSWORD);
         mWireMockServer = new WireMockServer(theWireMockConfiguration);
-        mWireMockServer.start();
+        startWireMockServer(mWireMockServer);
     }
 
     /**
@@ -82,7 +81,7 @@ public class WireMockHttpsWithClientAuthTests extends AbstractTestBase {
     @After
     public void tearDown() {
         /* Stop the WireMock server. */
-        mWireMockServer.stop();
+        stopWireMockServer(mWireMockServer);
 
         /*
          * Find all requests that were expected by the WireMock server but that were
@@ -228,9 +227,10 @@ public class WireMockHttpsWithClientAuthTests extends AbstractTestBase {
          * a hostname verifier that disables hostname verification.
          * The NOOP hostname verifier is used since we are using self-signed certificates
          * with a CN that does not match the hostname.
+         * The factory records the TLS handshake timings.
          */
-        final SSLSocketFactory theClientSSLSocketFactory = new SSLSocketFactory(theClientSSLContext);
-        theClientSSLSocketFactory.setHostnameVerifier(SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
+        final SSLSocketFactory theClientSSLSocketFactory =
+            new TimingSSLSocketFactory(theClientSSLContext, SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER);
 
         return theClientSSLSocketFactory;
     }
@@ -278,11 +278,7 @@ public class WireMockHttpsWithClientAuthTests extends AbstractTestBase {
      * @throws Exception If error occurs loading truststore.
      */
     private KeyStore getClientTruststore() throws Exception {
-        final KeyStore theClientTruststore = KeyStore.getInstance("JKS");
-        theClientTruststore.load(
-            new FileInputStream(CLIENT_TRUSTSTORE_PATH), CLIENT_TRUSTSTORE_PASSWORD.toCharArray());
-
-        return theClientTruststore;
+        return loadKeystore(CLIENT_TRUSTSTORE_PATH, CLIENT_TRUSTSTORE_PASSWORD);
     }
 
     /**
@@ -293,10 +289,6 @@ public class WireMockHttpsWithClientAuthTests extends AbstractTestBase {
      * @throws Exception If error occurs loading keystore.
      */
     private KeyStore getClientKeystore() throws Exception {
-        final KeyStore theClientKeystore = KeyStore.getInstance("JKS");
-        theClientKeystore.load(
-            new FileInputStream(CLIENT_KEYSTORE_PATH), CLIENT_KEYSTORE_PASSWORD.toCharArray());
-
-        return theClientKeystore;
+        return loadKeystore(CLIENT_KEYSTORE_PATH, CLIENT_KEYSTORE_PASSWORD);
     }
 }
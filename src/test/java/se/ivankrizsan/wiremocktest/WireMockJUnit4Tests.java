@@ -60,7 +60,7 @@ public class WireMockJUnit4Tests extends AbstractTestBase {
          * a test-class and call {@code resetAll} before each test.
          */
         mWireMockServer = new WireMockServer(HTTP_ENDPOINT_PORT);
-        mWireMockServer.start();
+        startWireMockServer(mWireMockServer);
     }
 
     /**
@@ -69,7 +69,7 @@ public class WireMockJUnit4Tests extends AbstractTestBase {
     @After
     public void tearDown() {
         /* Stop the WireMock server. */
-        mWireMockServer.stop();
+        stopWireMockServer(mWireMockServer);
 
         /*
          * Find all requests that were expected by the WireMock server but that were
@@ -236,7 +236,7 @@ public class WireMockJUnit4Tests extends AbstractTestBase {
     @Test
     public void responseTemplateTest() {
         /* Stop the default WireMock server, since a custom one is needed for this test. */
-        mWireMockServer.stop();
+        stopWireMockServer(mWireMockServer);
 
         /*
          * Create the response transformer that will insert values into the response
@@ -251,7 +251,7 @@ public class WireMockJUnit4Tests extends AbstractTestBase {
                 .options()
                 .port(HTTP_ENDPOINT_PORT)
                 .extensions(theTemplateTransformer));
-        mWireMockServer.start();
+        startWireMockServer(mWireMockServer);
         /*
          * Setup test HTTP mock as to expect one request to /wiremock/test with an Accept
          * header that has the value "application/xml".
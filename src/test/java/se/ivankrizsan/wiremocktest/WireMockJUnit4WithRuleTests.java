@@ -26,7 +26,7 @@ public class WireMockJUnit4WithRuleTests extends AbstractTestBase {
 
     /* Instance variable(s): */
     @Rule
-    public WireMockRule mWireMockRule = new WireMockRule(HTTP_ENDPOINT_PORT);
+    public WireMockRule mWireMockRule = new TimedWireMockRule(HTTP_ENDPOINT_PORT);
 
     /**
      * Performs preparations before each test.
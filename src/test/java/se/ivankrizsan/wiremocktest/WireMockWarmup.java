@@ -0,0 +1,484 @@
+package se.ivankrizsan.wiremocktest;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
+import com.github.tomakehurst.wiremock.stubbing.StubMapping;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.aResponse;
+import static com.github.tomakehurst.wiremock.client.WireMock.containing;
+import static com.github.tomakehurst.wiremock.client.WireMock.equalTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.post;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathMatching;
+
+/**
+ * Warms up a freshly started WireMock server by replaying a synthetic request mix
+ * against it until the request latency has stabilized, so that the JIT compiler has
+ * compiled the request handling code before any measurements are made.
+ * The request mix consists of a request matching a stub mapping, a request not matching
+ * any stub mapping, optionally a request to a templated stub mapping and, if the server
+ * listens for HTTPS, a HTTPS request matching a stub mapping.
+ * The stub mappings used during warmup are removed and the request journal of the server
+ * is reset after warmup, so warmup should be performed before any test stub mappings
+ * are registered or any test requests are sent.
+ * Typical use:
+ * {@code
+ *     mWireMockServer.start();
+ *     final WireMockWarmup.WarmupResult theResult = new WireMockWarmup().warmUp(mWireMockServer);
+ * }
+ *
+ * @author Ivan Krizsan
+ */
+public class WireMockWarmup {
+    /* Constant(s): */
+    private static final Logger LOGGER = LoggerFactory.getLogger(WireMockWarmup.class);
+    protected static final String WARMUP_BASE_PATH = "/__warmup/";
+    protected static final String WARMUP_HEADER = "X-Warmup";
+    protected static final String WARMUP_REQUEST_BODY = "{\"warmup\":true}";
+    protected static final byte[] WARMUP_REQUEST_BODY_BYTES = WARMUP_REQUEST_BODY.getBytes(StandardCharsets.UTF_8);
+    public static final int DEFAULT_WINDOW_SIZE = 200;
+    public static final double DEFAULT_TOLERANCE = 0.1;
+    public static final int DEFAULT_STABLE_WINDOWS = 3;
+    public static final long DEFAULT_MAX_DURATION_MILLIS = 30000;
+    protected static final int READ_BUFFER_SIZE = 8192;
+
+    /* Instance variable(s): */
+    protected int mWindowSize = DEFAULT_WINDOW_SIZE;
+    protected double mTolerance = DEFAULT_TOLERANCE;
+    protected int mStableWindows = DEFAULT_STABLE_WINDOWS;
+    protected long mMaxDurationMillis = DEFAULT_MAX_DURATION_MILLIS;
+    protected String mTemplateTransformerName;
+    protected SSLSocketFactory mHttpsSocketFactory;
+    protected volatile boolean mReady;
+    protected volatile WarmupResult mLastResult;
+
+    /**
+     * Sets the number of request mix iterations per measurement window.
+     *
+     * @param inWindowSize Iterations per window.
+     * @return This warmup.
+     */
+    public WireMockWarmup windowSize(final int inWindowSize) {
+        if (inWindowSize < 1) {
+            throw new IllegalArgumentException("Window size must be at least 1");
+        }
+        mWindowSize = inWindowSize;
+        return this;
+    }
+
+    /**
+     * Sets the maximum relative difference between the median latencies of two
+     * consecutive windows for the latency to be considered stable.
+     *
+     * @param inTolerance Tolerance, for instance 0.1 for ten percent.
+     * @return This warmup.
+     */
+    public WireMockWarmup tolerance(final double inTolerance) {
+        if (inTolerance <= 0) {
+            throw new IllegalArgumentException("Tolerance must be positive");
+        }
+        mTolerance = inTolerance;
+        return this;
+    }
+
+    /**
+     * Sets the number of consecutive stable windows required for warmup to complete.
+     *
+     * @param inStableWindows Number of stable windows.
+     * @return This warmup.
+     */
+    public WireMockWarmup stableWindows(final int inStableWindows) {
+        if (inStableWindows < 1) {
+            throw new IllegalArgumentException("Number of stable windows must be at least 1");
+        }
+        mStableWindows = inStableWindows;
+        return this;
+    }
+
+    /**
+     * Sets the maximum duration of warmup. Warmup ends when this duration has passed
+     * even if the latency has not stabilized.
+     *
+     * @param inMaxDurationMillis Maximum duration in milliseconds.
+     * @return This warmup.
+     */
+    public WireMockWarmup maxDurationMillis(final long inMaxDurationMillis) {
+        mMaxDurationMillis = inMaxDurationMillis;
+        return this;
+    }
+
+    /**
+     * Includes requests to a templated stub mapping in the request mix.
+     *
+     * @param inTemplateTransformerName Name of response template transformer registered
+     * as an extension of the server to warm up.
+     * @return This warmup.
+     */
+    public WireMockWarmup templateTransformer(final String inTemplateTransformerName) {
+        mTemplateTransformerName = inTemplateTransformerName;
+        return this;
+    }
+
+    /**
+     * Sets the socket factory used for HTTPS requests, for instance one supplying a client
+     * certificate when the server requires client authentication.
+     * If not set, a socket factory trusting all server certificates is used.
+     *
+     * @param inHttpsSocketFactory SSL socket factory.
+     * @return This warmup.
+     */
+    public WireMockWarmup httpsSocketFactory(final SSLSocketFactory inHttpsSocketFactory) {
+        mHttpsSocketFactory = inHttpsSocketFactory;
+        return this;
+    }
+
+    /**
+     * Determines whether a warmup has completed.
+     *
+     * @return True if warmup completed, false otherwise.
+     */
+    public boolean isReady() {
+        return mReady;
+    }
+
+    /**
+     * Retrieves the result of the most recently completed warmup.
+     *
+     * @return Warmup result or null if no warmup has completed.
+     */
+    public WarmupResult getLastResult() {
+        return mLastResult;
+    }
+
+    /**
+     * Warms up the supplied running WireMock server.
+     *
+     * @param inServer Server to warm up.
+     * @return Result of warmup.
+     * @throws IllegalStateException If a warmup request fails.
+     */
+    public WarmupResult warmUp(final WireMockServer inServer) {
+        mReady = false;
+        final String theWarmupPath = WARMUP_BASE_PATH + UUID.randomUUID();
+        final List<StubMapping> theWarmupStubMappings = registerWarmupStubMappings(inServer, theWarmupPath);
+        final List<WarmupRequest> theRequestMix = createRequestMix(inServer, theWarmupPath);
+
+        final long theStartNanos = System.nanoTime();
+        final long theDeadlineNanos = theStartNanos + TimeUnit.MILLISECONDS.toNanos(mMaxDurationMillis);
+        final List<Long> theWindowMedians = new ArrayList<>();
+        final long[] theWindowLatencies = new long[mWindowSize];
+        long theIterations = 0;
+        int theStableWindowCount = 0;
+        try {
+            while (theStableWindowCount < mStableWindows && System.nanoTime() < theDeadlineNanos) {
+                for (int i = 0; i < mWindowSize; i++) {
+                    final long theIterationStartNanos = System.nanoTime();
+                    for (final WarmupRequest theRequest : theRequestMix) {
+                        theRequest.send();
+                    }
+                    theWindowLatencies[i] = System.nanoTime() - theIterationStartNanos;
+                }
+                theIterations += mWindowSize;
+
+                Arrays.sort(theWindowLatencies);
+                final long theMedian = theWindowLatencies[mWindowSize / 2];
+                if (!theWindowMedians.isEmpty() && isStable(theWindowMedians.get(theWindowMedians.size() - 1), theMedian)) {
+                    theStableWindowCount++;
+                } else {
+                    theStableWindowCount = 0;
+                }
+                theWindowMedians.add(theMedian);
+            }
+        } catch (final IOException theException) {
+            throw new IllegalStateException("Warmup request failed", theException);
+        } finally {
+            for (final StubMapping theStubMapping : theWarmupStubMappings) {
+                inServer.removeStubMapping(theStubMapping);
+            }
+            inServer.resetRequests();
+        }
+
+        final WarmupResult theResult = new WarmupResult(
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - theStartNanos),
+            theIterations * theRequestMix.size(),
+            theWindowMedians,
+            theStableWindowCount >= mStableWindows);
+        mLastResult = theResult;
+        mReady = true;
+        LOGGER.info("WireMock server warmup completed: {}", theResult);
+        return theResult;
+    }
+
+    /**
+     * Determines whether the supplied median latency is within the tolerance of the
+     * supplied previous median latency.
+     *
+     * @param inPreviousMedian Median latency of previous window in nanoseconds.
+     * @param inMedian Median latency of current window in nanoseconds.
+     * @return True if stable, false otherwise.
+     */
+    protected boolean isStable(final long inPreviousMedian, final long inMedian) {
+        return Math.abs(inMedian - inPreviousMedian) <= mTolerance * inPreviousMedian;
+    }
+
+    /**
+     * Registers the stub mappings used during warmup with the supplied server.
+     *
+     * @param inServer Server to register stub mappings with.
+     * @param inWarmupPath Base path of warmup requests.
+     * @return Registered stub mappings.
+     */
+    protected List<StubMapping> registerWarmupStubMappings(final WireMockServer inServer,
+        final String inWarmupPath) {
+        final List<StubMapping> theStubMappings = new ArrayList<>();
+        theStubMappings.add(inServer.stubFor(
+            post(urlPathEqualTo(inWarmupPath + "/match"))
+                .withHeader(HttpHeaders.ACCEPT, equalTo(MediaType.APPLICATION_JSON_VALUE))
+                .withRequestBody(containing("warmup"))
+                .willReturn(
+                    aResponse()
+                        .withStatus(HttpStatus.OK.value())
+                        .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                        .withBody(WARMUP_REQUEST_BODY)
+                )
+        ));
+        if (mTemplateTransformerName != null) {
+            final ResponseDefinitionBuilder theTemplatedResponse = aResponse()
+                .withStatus(HttpStatus.OK.value())
+                .withHeader(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_PLAIN_VALUE)
+                .withBody("Hello {{request.headers." + WARMUP_HEADER + "}} at {{request.path.[3]}}")
+                .withTransformers(mTemplateTransformerName);
+            theStubMappings.add(inServer.stubFor(
+                get(urlPathMatching(inWarmupPath + "/template/.*"))
+                    .willReturn(theTemplatedResponse)
+            ));
+        }
+        return theStubMappings;
+    }
+
+    /**
+     * Creates the request mix replayed against the supplied server.
+     *
+     * @param inServer Server to send requests to.
+     * @param inWarmupPath Base path of warmup requests.
+     * @return Warmup requests.
+     */
+    protected List<WarmupRequest> createRequestMix(final WireMockServer inServer, final String inWarmupPath) {
+        final String theHttpBaseUrl = "http://localhost:" + inServer.port() + inWarmupPath;
+        final List<WarmupRequest> theRequestMix = new ArrayList<>();
+        theRequestMix.add(new WarmupRequest(theHttpBaseUrl + "/match", HttpMethod.POST,
+            HttpStatus.OK.value(), null));
+        theRequestMix.add(new WarmupRequest(theHttpBaseUrl + "/mismatch", HttpMethod.GET,
+            HttpStatus.NOT_FOUND.value(), null));
+        if (mTemplateTransformerName != null) {
+            theRequestMix.add(new WarmupRequest(theHttpBaseUrl + "/template/hello", HttpMethod.GET,
+                HttpStatus.OK.value(), null));
+        }
+        if (isHttpsEnabled(inServer)) {
+            final String theHttpsUrl = "https://localhost:" + inServer.httpsPort() + inWarmupPath + "/match";
+            theRequestMix.add(new WarmupRequest(theHttpsUrl, HttpMethod.POST, HttpStatus.OK.value(),
+                mHttpsSocketFactory != null ? mHttpsSocketFactory : createTrustAllSocketFactory()));
+        }
+        return theRequestMix;
+    }
+
+    /**
+     * Determines whether the supplied server listens for HTTPS requests.
+     *
+     * @param inServer Server.
+     * @return True if HTTPS is enabled, false otherwise.
+     */
+    protected static boolean isHttpsEnabled(final WireMockServer inServer) {
+        try {
+            return inServer.httpsPort() > 0;
+        } catch (final IllegalStateException theException) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates a SSL socket factory that trusts all server certificates.
+     * Only to be used when warming up a local mock server.
+     *
+     * @return SSL socket factory.
+     */
+    protected static SSLSocketFactory createTrustAllSocketFactory() {
+        final TrustManager theTrustAllManager = new X509TrustManager() {
+            @Override
+            public void checkClientTrusted(final X509Certificate[] inChain, final String inAuthType) {
+            }
+
+            @Override
+            public void checkServerTrusted(final X509Certificate[] inChain, final String inAuthType) {
+            }
+
+            @Override
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+        };
+        try {
+            final SSLContext theSslContext = SSLContext.getInstance("TLS");
+            theSslContext.init(null, new TrustManager[] {theTrustAllManager}, null);
+            return theSslContext.getSocketFactory();
+        } catch (final GeneralSecurityException theException) {
+            throw new IllegalStateException("Unable to create SSL context for warmup", theException);
+        }
+    }
+
+    /**
+     * A request replayed during warmup.
+     * Uses {@code HttpURLConnection}, which keeps connections alive when response
+     * bodies are fully read, so warmup exercises request handling rather than connection setup.
+     */
+    protected static class WarmupRequest {
+        private final URL mUrl;
+        private final HttpMethod mMethod;
+        private final int mExpectedStatus;
+        private final SSLSocketFactory mSocketFactory;
+        private final byte[] mReadBuffer = new byte[READ_BUFFER_SIZE];
+
+        /**
+         * Creates a warmup request.
+         *
+         * @param inUrl URL to send request to.
+         * @param inMethod HTTP method. POST requests have a JSON request body.
+         * @param inExpectedStatus Expected HTTP status of response.
+         * @param inSocketFactory SSL socket factory for HTTPS requests, null for HTTP requests.
+         */
+        WarmupRequest(final String inUrl, final HttpMethod inMethod, final int inExpectedStatus,
+            final SSLSocketFactory inSocketFactory) {
+            try {
+                mUrl = new URL(inUrl);
+            } catch (final IOException theException) {
+                throw new IllegalArgumentException("Invalid warmup URL: " + inUrl, theException);
+            }
+            mMethod = inMethod;
+            mExpectedStatus = inExpectedStatus;
+            mSocketFactory = inSocketFactory;
+        }
+
+        /**
+         * Sends the request and reads the entire response.
+         *
+         * @throws IOException If error occurs sending request or if response has unexpected status.
+         */
+        void send() throws IOException {
+            final HttpURLConnection theConnection = (HttpURLConnection) mUrl.openConnection();
+            if (mSocketFactory != null) {
+                final HttpsURLConnection theHttpsConnection = (HttpsURLConnection) theConnection;
+                theHttpsConnection.setSSLSocketFactory(mSocketFactory);
+                theHttpsConnection.setHostnameVerifier((theHostname, theSession) -> true);
+            }
+            theConnection.setRequestMethod(mMethod.name());
+            theConnection.setRequestProperty(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE);
+            theConnection.setRequestProperty(WARMUP_HEADER, "warmup");
+            if (mMethod == HttpMethod.POST) {
+                theConnection.setDoOutput(true);
+                theConnection.setRequestProperty(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+                theConnection.setFixedLengthStreamingMode(WARMUP_REQUEST_BODY_BYTES.length);
+                try (OutputStream theOutputStream = theConnection.getOutputStream()) {
+                    theOutputStream.write(WARMUP_REQUEST_BODY_BYTES);
+                }
+            }
+
+            final int theStatus = theConnection.getResponseCode();
+            final InputStream theResponseStream = theStatus < HttpStatus.BAD_REQUEST.value()
+                ? theConnection.getInputStream() : theConnection.getErrorStream();
+            if (theResponseStream != null) {
+                try (InputStream theInputStream = theResponseStream) {
+                    while (theInputStream.read(mReadBuffer) != -1) {
+                        /* Read entire response so that the connection can be reused. */
+                    }
+                }
+            }
+            if (theStatus != mExpectedStatus) {
+                throw new IOException("Warmup request to " + mUrl + " returned status " + theStatus
+                    + ", expected " + mExpectedStatus);
+            }
+        }
+    }
+
+    /**
+     * Result of a warmup.
+     */
+    public static final class WarmupResult {
+        private final long mDurationMillis;
+        private final long mRequestCount;
+        private final List<Long> mWindowMedianNanos;
+        private final boolean mStabilized;
+
+        /**
+         * Creates a warmup result.
+         *
+         * @param inDurationMillis Duration of warmup in milliseconds.
+         * @param inRequestCount Number of requests sent.
+         * @param inWindowMedianNanos Median request mix latency of each window in nanoseconds.
+         * @param inStabilized True if latency stabilized, false if warmup timed out.
+         */
+        WarmupResult(final long inDurationMillis, final long inRequestCount,
+            final List<Long> inWindowMedianNanos, final boolean inStabilized) {
+            mDurationMillis = inDurationMillis;
+            mRequestCount = inRequestCount;
+            mWindowMedianNanos = Collections.unmodifiableList(new ArrayList<>(inWindowMedianNanos));
+            mStabilized = inStabilized;
+        }
+
+        public long getDurationMillis() {
+            return mDurationMillis;
+        }
+
+        public long getRequestCount() {
+            return mRequestCount;
+        }
+
+        public List<Long> getWindowMedianNanos() {
+            return mWindowMedianNanos;
+        }
+
+        public boolean isStabilized() {
+            return mStabilized;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder theMedianMicros = new StringBuilder();
+            for (final Long theMedianNanos : mWindowMedianNanos) {
+                if (theMedianMicros.length() > 0) {
+                    theMedianMicros.append(", ");
+                }
+                theMedianMicros.append(TimeUnit.NANOSECONDS.toMicros(theMedianNanos));
+            }
+            return "duration " + mDurationMillis + " ms, " + mRequestCount + " requests, "
+                + (mStabilized ? "stabilized" : "not stabilized") + ", window median latencies [us]: ["
+                + theMedianMicros + "]";
+        }
+    }
+}
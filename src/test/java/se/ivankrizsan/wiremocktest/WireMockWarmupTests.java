@@ -0,0 +1,99 @@
+package se.ivankrizsan.wiremocktest;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.extension.responsetemplating.ResponseTemplateTransformer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.wireMockConfig;
+
+/**
+ * Examples on how to warm up a WireMock server before sending test requests to it,
+ * so that the first test requests are not served by code that has not yet been
+ * compiled by the JIT compiler.
+ *
+ * @author Ivan Krizsan
+ */
+public class WireMockWarmupTests extends AbstractTestBase {
+    /* Constant(s): */
+    protected static final String TEMPLATE_TRANSFORMER_NAME = "response-template";
+    protected static final int WINDOW_SIZE = 50;
+    protected static final long MAX_WARMUP_MILLIS = 5000;
+    /** Number of requests in request mix with templated and HTTPS requests. */
+    protected static final int FULL_REQUEST_MIX_SIZE = 4;
+
+    /* Instance variable(s): */
+    protected WireMockServer mWireMockServer;
+
+    /**
+     * Performs cleanup after each test.
+     */
+    @After
+    public void tearDown() {
+        if (mWireMockServer != null) {
+            mWireMockServer.stop();
+        }
+    }
+
+    /**
+     * Tests warming up a WireMock server listening for both HTTP and HTTPS requests
+     * with a request mix that includes templated requests.
+     *
+     * Expected result: The warmup should be ready after completing, warmup results should be
+     * available and no warmup stub mappings or requests should remain in the server.
+     */
+    @Test
+    public void warmupWithFullRequestMixTest() {
+        mWireMockServer = new WireMockServer(wireMockConfig()
+            .dynamicPort()
+            .dynamicHttpsPort()
+            .extensions(new ResponseTemplateTransformer(false)));
+        mWireMockServer.start();
+        final WireMockWarmup theWarmup = new WireMockWarmup()
+            .windowSize(WINDOW_SIZE)
+            .maxDurationMillis(MAX_WARMUP_MILLIS)
+            .templateTransformer(TEMPLATE_TRANSFORMER_NAME);
+        Assert.assertFalse("Warmup should not be ready before warming up", theWarmup.isReady());
+
+        final WireMockWarmup.WarmupResult theResult =
+            TestPhaseTimings.timeAndGet(TestPhase.SERVER_WARMUP, () -> theWarmup.warmUp(mWireMockServer));
+
+        Assert.assertTrue("Warmup should be ready after warming up", theWarmup.isReady());
+        Assert.assertSame("Last result should be available", theResult, theWarmup.getLastResult());
+        Assert.assertFalse("Median latency of each window should be recorded",
+            theResult.getWindowMedianNanos().isEmpty());
+        Assert.assertEquals("Each window should replay the full request mix",
+            theResult.getWindowMedianNanos().size() * WINDOW_SIZE * FULL_REQUEST_MIX_SIZE,
+            theResult.getRequestCount());
+        Assert.assertTrue("Warmup stub mappings should be removed",
+            mWireMockServer.listAllStubMappings().getMappings().isEmpty());
+        Assert.assertTrue("Warmup requests should be removed from the request journal",
+            mWireMockServer.getAllServeEvents().isEmpty());
+    }
+
+    /**
+     * Tests warming up a WireMock server with a maximum warmup duration too short
+     * for the latency to stabilize.
+     *
+     * Expected result: The warmup should end when the maximum duration has passed, report
+     * that latency did not stabilize and still be ready.
+     */
+    @Test
+    public void warmupTimeoutTest() {
+        mWireMockServer = new WireMockServer(wireMockConfig().dynamicPort());
+        mWireMockServer.start();
+        final WireMockWarmup theWarmup = new WireMockWarmup()
+            .windowSize(WINDOW_SIZE)
+            .tolerance(Double.MIN_VALUE)
+            .stableWindows(Integer.MAX_VALUE)
+            .maxDurationMillis(200);
+
+        final WireMockWarmup.WarmupResult theResult = theWarmup.warmUp(mWireMockServer);
+
+        Assert.assertFalse("Latency should not be considered stabilized", theResult.isStabilized());
+        Assert.assertTrue("Warmup should be ready even when timed out", theWarmup.isReady());
+        Assert.assertTrue("Warmup should end shortly after maximum duration",
+            theResult.getDurationMillis() < MAX_WARMUP_MILLIS);
+    }
+}
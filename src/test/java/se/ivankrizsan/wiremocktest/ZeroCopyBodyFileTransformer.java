@@ -0,0 +1,80 @@
+package se.ivankrizsan.wiremocktest;
+
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
+import com.github.tomakehurst.wiremock.common.FileSource;
+import com.github.tomakehurst.wiremock.extension.Parameters;
+import com.github.tomakehurst.wiremock.extension.ResponseDefinitionTransformer;
+import com.github.tomakehurst.wiremock.http.Request;
+import com.github.tomakehurst.wiremock.http.ResponseDefinition;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Response definition transformer that hands unmodified body files over to the
+ * {@link ZeroCopyHttpServer}, which writes them to the client using zero-copy transfer.
+ * Applies to requests that the zero-copy HTTP server has forwarded to WireMock and
+ * for which the matching stub mapping responds with a body file that is not
+ * transformed by any other transformer, such as the response template transformer.
+ * The body file is removed from the response definition and its absolute path is
+ * instead returned in the {@link ZeroCopyHttpServer#BODY_FILE_RESPONSE_HEADER} header.
+ * Other requests, for instance requests received on the HTTPS port, are not affected
+ * and are served by WireMock as usual.
+ * Note that this transformer applies globally, so response template transformers
+ * that also apply globally may not see body files of requests forwarded by the
+ * zero-copy HTTP server.
+ *
+ * @author Ivan Krizsan
+ */
+public class ZeroCopyBodyFileTransformer extends ResponseDefinitionTransformer {
+    /* Constant(s): */
+    public static final String TRANSFORMER_NAME = "zero-copy-body-file";
+
+    @Override
+    public ResponseDefinition transform(final Request inRequest, final ResponseDefinition inResponseDefinition,
+        final FileSource inFileSource, final Parameters inParameters) {
+        if (!inRequest.containsHeader(ZeroCopyHttpServer.ZERO_COPY_REQUEST_HEADER)
+            || !isUnmodifiedBodyFile(inResponseDefinition)) {
+            return inResponseDefinition;
+        }
+
+        /* Body files not in the file system, for instance on the classpath, are served by WireMock. */
+        final Path theBodyFile =
+            Paths.get(inFileSource.getPath(), inResponseDefinition.getBodyFileName()).toAbsolutePath();
+        if (!Files.isRegularFile(theBodyFile)) {
+            return inResponseDefinition;
+        }
+
+        return ResponseDefinitionBuilder
+            .like(inResponseDefinition)
+            .withBodyFile(null)
+            .withHeader(ZeroCopyHttpServer.BODY_FILE_RESPONSE_HEADER, theBodyFile.toString())
+            .build();
+    }
+
+    @Override
+    public boolean applyGlobally() {
+        return true;
+    }
+
+    @Override
+    public String getName() {
+        return TRANSFORMER_NAME;
+    }
+
+    /**
+     * Determines whether the supplied response definition responds with a body file
+     * that is written to the client without modification.
+     *
+     * @param inResponseDefinition Response definition.
+     * @return True if the body file is unmodified, false otherwise.
+     */
+    protected boolean isUnmodifiedBodyFile(final ResponseDefinition inResponseDefinition) {
+        return inResponseDefinition.specifiesBodyFile()
+            && (inResponseDefinition.getTransformers() == null || inResponseDefinition.getTransformers().isEmpty())
+            && inResponseDefinition.getFault() == null
+            && inResponseDefinition.getChunkedDribbleDelay() == null
+            && !inResponseDefinition.isProxyResponse();
+    }
+}
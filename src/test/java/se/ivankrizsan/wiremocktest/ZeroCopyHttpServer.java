@@ -0,0 +1,369 @@
+package se.ivankrizsan.wiremocktest;
+
+import com.github.tomakehurst.wiremock.http.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HTTP server that serves the plain HTTP port of a WireMock server and writes
+ * unmodified body files to clients using zero-copy transfer.
+ * Requests received on the plain HTTP port are forwarded to the regular WireMock HTTP
+ * server, listening on a port of its own, which matches requests, records them in the
+ * request journal and renders responses as usual. Together with the
+ * {@link ZeroCopyBodyFileTransformer}, responses with an unmodified body file are returned
+ * without the body and with the path of the body file in a header. Such body files are
+ * then written to the client using {@link BodyFileTransfer}, without copying the file
+ * contents through user-space buffers. Other responses are relayed to the client unchanged.
+ * The HTTPS port, if enabled, is served by the regular WireMock HTTP server, since
+ * TLS connections cannot use zero-copy transfer.
+ * Connections are closed after each response and request bodies must have a content length.
+ *
+ * @author Ivan Krizsan
+ */
+public class ZeroCopyHttpServer implements HttpServer {
+    /* Constant(s): */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ZeroCopyHttpServer.class);
+    /** Header added to requests forwarded to WireMock, allowing body files to be transferred using zero-copy. */
+    public static final String ZERO_COPY_REQUEST_HEADER = "X-WireMock-Zero-Copy";
+    /** Header in which WireMock returns the absolute path of a body file to transfer using zero-copy. */
+    public static final String BODY_FILE_RESPONSE_HEADER = "X-WireMock-Body-File";
+    /** Maximum size of the request line and headers of a request or response. */
+    protected static final int MAX_HEAD_SIZE = 64 * 1024;
+    protected static final byte[] CRLF = {'\r', '\n'};
+    /** Headers not relayed, since they are replaced or only apply to a single connection. */
+    protected static final List<String> HOP_BY_HOP_HEADERS =
+        Arrays.asList("connection", "keep-alive", ZERO_COPY_REQUEST_HEADER.toLowerCase());
+    /** Headers from WireMock not relayed when the body is replaced by a body file. */
+    protected static final List<String> BODY_FILE_EXCLUDED_HEADERS = Arrays.asList(
+        "connection", "keep-alive", "content-length", "content-encoding", "transfer-encoding",
+        BODY_FILE_RESPONSE_HEADER.toLowerCase());
+
+    /* Instance variable(s): */
+    protected final HttpServer mWireMockHttpServer;
+    protected final String mBindAddress;
+    protected final int mRequestedPort;
+    protected volatile ServerSocketChannel mServerChannel;
+    protected ExecutorService mConnectionExecutor;
+
+    /**
+     * Creates a zero-copy HTTP server that forwards requests to the supplied WireMock HTTP server.
+     *
+     * @param inWireMockHttpServer Regular WireMock HTTP server.
+     * @param inBindAddress Address to listen on.
+     * @param inPort Port to listen on for plain HTTP requests, zero for any free port.
+     */
+    public ZeroCopyHttpServer(final HttpServer inWireMockHttpServer, final String inBindAddress,
+        final int inPort) {
+        mWireMockHttpServer = inWireMockHttpServer;
+        mBindAddress = inBindAddress;
+        mRequestedPort = inPort;
+    }
+
+    @Override
+    public void start() {
+        mWireMockHttpServer.start();
+        try {
+            mServerChannel = ServerSocketChannel.open();
+            mServerChannel.bind(new InetSocketAddress(mBindAddress, mRequestedPort));
+        } catch (final IOException theException) {
+            mWireMockHttpServer.stop();
+            throw new IllegalStateException("Unable to listen on port " + mRequestedPort, theException);
+        }
+
+        final AtomicInteger theThreadCount = new AtomicInteger();
+        mConnectionExecutor = Executors.newCachedThreadPool(theRunnable -> {
+            final Thread theThread = new Thread(theRunnable, "zero-copy-http-" + theThreadCount.incrementAndGet());
+            theThread.setDaemon(true);
+            return theThread;
+        });
+        mConnectionExecutor.execute(this::acceptConnections);
+        LOGGER.debug("Zero-copy HTTP server listening on port {}, forwarding to port {}",
+            port(), mWireMockHttpServer.port());
+    }
+
+    @Override
+    public void stop() {
+        if (mServerChannel != null) {
+            try {
+                mServerChannel.close();
+            } catch (final IOException theException) {
+                LOGGER.warn("Error closing zero-copy HTTP server channel", theException);
+            }
+        }
+        if (mConnectionExecutor != null) {
+            mConnectionExecutor.shutdownNow();
+        }
+        mWireMockHttpServer.stop();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return mServerChannel != null && mServerChannel.isOpen() && mWireMockHttpServer.isRunning();
+    }
+
+    @Override
+    public int port() {
+        return mServerChannel != null ? mServerChannel.socket().getLocalPort() : mRequestedPort;
+    }
+
+    @Override
+    public int httpsPort() {
+        return mWireMockHttpServer.httpsPort();
+    }
+
+    /**
+     * Accepts connections on the plain HTTP port until the server is stopped.
+     */
+    protected void acceptConnections() {
+        while (mServerChannel.isOpen()) {
+            try {
+                final SocketChannel theClientChannel = mServerChannel.accept();
+                mConnectionExecutor.execute(() -> serveConnection(theClientChannel));
+            } catch (final ClosedChannelException theException) {
+                return;
+            } catch (final IOException theException) {
+                LOGGER.warn("Error accepting connection", theException);
+            }
+        }
+    }
+
+    /**
+     * Serves one request on the supplied client connection and closes the connection.
+     *
+     * @param inClientChannel Blocking channel of client connection.
+     */
+    protected void serveConnection(final SocketChannel inClientChannel) {
+        try (SocketChannel theClientChannel = inClientChannel) {
+            final Socket theClientSocket = theClientChannel.socket();
+            final InputStream theClientInput = new BufferedInputStream(theClientSocket.getInputStream());
+            final OutputStream theClientOutput = theClientSocket.getOutputStream();
+            final List<String> theRequestHead = readHead(theClientInput);
+            if (theRequestHead == null) {
+                return;
+            }
+            if (headerValue(theRequestHead, "Transfer-Encoding") != null) {
+                writeHead(theClientOutput, Arrays.asList("HTTP/1.1 411 Length Required",
+                    "Content-Length: 0", "Connection: close"));
+                return;
+            }
+            final boolean theHeadRequestFlag = theRequestHead.get(0).startsWith("HEAD ");
+
+            try (Socket theWireMockSocket = new Socket(wireMockAddress(), mWireMockHttpServer.port())) {
+                forwardRequest(theRequestHead, theClientInput, theWireMockSocket.getOutputStream());
+
+                final InputStream theWireMockInput = new BufferedInputStream(theWireMockSocket.getInputStream());
+                final List<String> theResponseHead = readHead(theWireMockInput);
+                if (theResponseHead == null) {
+                    throw new EOFException("WireMock closed connection without responding");
+                }
+                final String theBodyFilePath = headerValue(theResponseHead, BODY_FILE_RESPONSE_HEADER);
+                if (theBodyFilePath != null) {
+                    writeBodyFileResponse(theResponseHead, Paths.get(theBodyFilePath), theHeadRequestFlag,
+                        theClientSocket);
+                } else {
+                    writeHead(theClientOutput, withoutHeaders(theResponseHead, HOP_BY_HOP_HEADERS,
+                        "Connection: close"));
+                    copy(theWireMockInput, theClientOutput, Long.MAX_VALUE);
+                }
+            }
+        } catch (final IOException theException) {
+            LOGGER.debug("Error serving connection", theException);
+        }
+    }
+
+    /**
+     * Forwards the supplied request head and the request body to WireMock, marking
+     * the request as eligible for zero-copy body file transfer.
+     *
+     * @param inRequestHead Request line and headers.
+     * @param inClientInput Client input positioned at the start of the request body.
+     * @param inWireMockOutput Output of connection to WireMock.
+     * @throws IOException If error occurs forwarding the request.
+     */
+    protected void forwardRequest(final List<String> inRequestHead, final InputStream inClientInput,
+        final OutputStream inWireMockOutput) throws IOException {
+        writeHead(inWireMockOutput, withoutHeaders(inRequestHead, HOP_BY_HOP_HEADERS,
+            "Connection: close", ZERO_COPY_REQUEST_HEADER + ": true"));
+        final String theContentLength = headerValue(inRequestHead, "Content-Length");
+        if (theContentLength != null) {
+            copy(inClientInput, inWireMockOutput, Long.parseLong(theContentLength));
+        }
+    }
+
+    /**
+     * Writes a response, with the supplied response head from WireMock, that has the
+     * supplied body file as body to the client.
+     *
+     * @param inResponseHead Status line and headers of response from WireMock.
+     * @param inBodyFile Body file.
+     * @param inHeadRequestFlag True if the request was a HEAD request, in which case no body is written.
+     * @param inClientSocket Client socket.
+     * @throws IOException If error occurs writing response.
+     */
+    protected void writeBodyFileResponse(final List<String> inResponseHead, final Path inBodyFile,
+        final boolean inHeadRequestFlag, final Socket inClientSocket) throws IOException {
+        writeHead(inClientSocket.getOutputStream(), withoutHeaders(inResponseHead,
+            BODY_FILE_EXCLUDED_HEADERS, "Content-Length: " + Files.size(inBodyFile), "Connection: close"));
+        if (!inHeadRequestFlag) {
+            BodyFileTransfer.transfer(inBodyFile, inClientSocket);
+        }
+    }
+
+    /**
+     * Retrieves the address at which the regular WireMock HTTP server can be reached.
+     *
+     * @return WireMock address.
+     * @throws UnknownHostException If the bind address cannot be resolved.
+     */
+    protected InetAddress wireMockAddress() throws UnknownHostException {
+        final InetAddress theBindAddress = InetAddress.getByName(mBindAddress);
+        return theBindAddress.isAnyLocalAddress() ? InetAddress.getLoopbackAddress() : theBindAddress;
+    }
+
+    /**
+     * Reads the start line and the headers of a request or response.
+     *
+     * @param inInputStream Stream to read from, positioned at the start of the request or response.
+     * @return Start line followed by header lines, or null if the stream ended before any data.
+     * @throws IOException If error occurs reading, if the stream ends within the head or if the
+     * head is too large.
+     */
+    protected static List<String> readHead(final InputStream inInputStream) throws IOException {
+        final ByteArrayOutputStream theHeadBytes = new ByteArrayOutputStream();
+        int theMatchedCount = 0;
+        while (theMatchedCount < 4) {
+            final int theByte = inInputStream.read();
+            if (theByte == -1) {
+                if (theHeadBytes.size() == 0) {
+                    return null;
+                }
+                throw new EOFException("Connection closed within HTTP head");
+            }
+            if (theHeadBytes.size() >= MAX_HEAD_SIZE) {
+                throw new IOException("HTTP head larger than " + MAX_HEAD_SIZE + " bytes");
+            }
+            theHeadBytes.write(theByte);
+            if (theByte == CRLF[theMatchedCount % 2]) {
+                theMatchedCount++;
+            } else {
+                theMatchedCount = theByte == CRLF[0] ? 1 : 0;
+            }
+        }
+
+        final String theHead = new String(theHeadBytes.toByteArray(), StandardCharsets.ISO_8859_1);
+        return new ArrayList<>(Arrays.asList(theHead.substring(0, theHead.length() - 4).split("\r\n")));
+    }
+
+    /**
+     * Writes the supplied start line and header lines, followed by an empty line.
+     *
+     * @param inOutputStream Stream to write to.
+     * @param inHead Start line followed by header lines.
+     * @throws IOException If error occurs writing.
+     */
+    protected static void writeHead(final OutputStream inOutputStream, final List<String> inHead)
+        throws IOException {
+        final StringBuilder theHead = new StringBuilder();
+        for (final String theLine : inHead) {
+            theHead.append(theLine).append("\r\n");
+        }
+        theHead.append("\r\n");
+        inOutputStream.write(theHead.toString().getBytes(StandardCharsets.ISO_8859_1));
+        inOutputStream.flush();
+    }
+
+    /**
+     * Finds the value of the header with the supplied name.
+     *
+     * @param inHead Start line followed by header lines.
+     * @param inHeaderName Name of header, case-insensitive.
+     * @return Header value or null if no such header.
+     */
+    protected static String headerValue(final List<String> inHead, final String inHeaderName) {
+        for (final String theLine : inHead.subList(1, inHead.size())) {
+            final int theColonIndex = theLine.indexOf(':');
+            if (theColonIndex > 0 && theLine.substring(0, theColonIndex).trim().equalsIgnoreCase(inHeaderName)) {
+                return theLine.substring(theColonIndex + 1).trim();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates a copy of the supplied head without the headers with the supplied names
+     * and with the supplied header lines added.
+     *
+     * @param inHead Start line followed by header lines.
+     * @param inExcludedHeaderNames Lower-case names of headers to remove.
+     * @param inAddedHeaderLines Header lines to add.
+     * @return New head.
+     */
+    protected static List<String> withoutHeaders(final List<String> inHead, final List<String> inExcludedHeaderNames,
+        final String... inAddedHeaderLines) {
+        final List<String> theHead = new ArrayList<>();
+        theHead.add(inHead.get(0));
+        for (final String theLine : inHead.subList(1, inHead.size())) {
+            final int theColonIndex = theLine.indexOf(':');
+            final String theHeaderName = theColonIndex > 0 ? theLine.substring(0, theColonIndex).trim() : theLine;
+            if (!inExcludedHeaderNames.contains(theHeaderName.toLowerCase())) {
+                theHead.add(theLine);
+            }
+        }
+        theHead.addAll(Arrays.asList(inAddedHeaderLines));
+        return theHead;
+    }
+
+    /**
+     * Copies at most the supplied number of bytes from the supplied input stream to
+     * the supplied output stream.
+     *
+     * @param inInputStream Stream to copy from.
+     * @param inOutputStream Stream to copy to.
+     * @param inMaxByteCount Maximum number of bytes to copy, {@code Long.MAX_VALUE} to copy
+     * until the end of the input stream.
+     * @throws IOException If error occurs copying or if the input stream ends before the
+     * supplied number of bytes, other than {@code Long.MAX_VALUE}, have been copied.
+     */
+    protected static void copy(final InputStream inInputStream, final OutputStream inOutputStream,
+        final long inMaxByteCount) throws IOException {
+        final byte[] theBuffer = new byte[BodyFileTransfer.COPY_BUFFER_SIZE];
+        long theRemainingCount = inMaxByteCount;
+        while (theRemainingCount > 0) {
+            final int theReadCount =
+                inInputStream.read(theBuffer, 0, (int) Math.min(theBuffer.length, theRemainingCount));
+            if (theReadCount == -1) {
+                if (inMaxByteCount != Long.MAX_VALUE) {
+                    throw new EOFException("Connection closed within HTTP body");
+                }
+                break;
+            }
+            inOutputStream.write(theBuffer, 0, theReadCount);
+            theRemainingCount -= theReadCount;
+        }
+        inOutputStream.flush();
+    }
+}
@@ -0,0 +1,46 @@
+package se.ivankrizsan.wiremocktest;
+
+import com.github.tomakehurst.wiremock.core.Options;
+import com.github.tomakehurst.wiremock.http.AdminRequestHandler;
+import com.github.tomakehurst.wiremock.http.HttpServer;
+import com.github.tomakehurst.wiremock.http.HttpServerFactory;
+import com.github.tomakehurst.wiremock.http.StubRequestHandler;
+import com.github.tomakehurst.wiremock.jetty9.JettyHttpServerFactory;
+
+/**
+ * Factory creating {@link ZeroCopyHttpServer}s for WireMock servers.
+ * The plain HTTP port of the WireMock server is the port supplied to this factory,
+ * while the port in the WireMock configuration is used by the regular WireMock HTTP server
+ * to which requests are forwarded. The {@link ZeroCopyBodyFileTransformer} must be registered
+ * as an extension for body files to be transferred using zero-copy.
+ * Example:
+ * <pre>
+ * new WireMockServer(wireMockConfig()
+ *     .dynamicPort()
+ *     .httpServerFactory(new ZeroCopyHttpServerFactory(8123))
+ *     .extensions(new ZeroCopyBodyFileTransformer()));
+ * </pre>
+ *
+ * @author Ivan Krizsan
+ */
+public class ZeroCopyHttpServerFactory implements HttpServerFactory {
+    /* Instance variable(s): */
+    protected final int mPort;
+
+    /**
+     * Creates a factory creating zero-copy HTTP servers listening on the supplied port.
+     *
+     * @param inPort Port to listen on for plain HTTP requests, zero for any free port.
+     */
+    public ZeroCopyHttpServerFactory(final int inPort) {
+        mPort = inPort;
+    }
+
+    @Override
+    public HttpServer buildHttpServer(final Options inOptions, final AdminRequestHandler inAdminRequestHandler,
+        final StubRequestHandler inStubRequestHandler) {
+        final HttpServer theWireMockHttpServer = new JettyHttpServerFactory()
+            .buildHttpServer(inOptions, inAdminRequestHandler, inStubRequestHandler);
+        return new ZeroCopyHttpServer(theWireMockHttpServer, inOptions.bindAddress(), mPort);
+    }
+}